@@ -0,0 +1,275 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// AUDIO ENGINE - one long-lived thread that owns the audio output (AudioSink) for the whole session and continuously renders
+// the feedback tone in chunks of CHUNK_FRAMES with the WavetableOscillator.
+// - the feedback side publishes gain and frequency targets atomically (set(), tone(), silence()); publishing never blocks
+//   and only allocates when the target changes
+// - gain is applied in software with the dB mapping of the former MASTER_GAIN control, min * (1 - GAIN) dB, and every
+//   change is ramped linearly over RAMP_MS; frequency changes keep the phase of the oscillator, so changes are click-free
+// - underruns (device buffer ran empty before the next chunk arrived) and rendered frames are counted
+// - scheduled tones (schedule()) start exactly at their frame position in the rendered stream; their actual onset is taken
+//   from the frame position of the device and reported to an OnsetListener together with the scheduled onset
+// Options: polytouch.audio.chunk (frames per render, 256), polytouch.audio.lineBuffer (device buffer in frames, 4096),
+// polytouch.audio.rampMs (5), polytouch.audio.minGainDb (gain of GAIN = 0, -80 dB as the MASTER_GAIN minimum of most lines).
+class AudioEngine {
+	static final int CHUNK_FRAMES = Integer.getInteger( "polytouch.audio.chunk", 256 );
+	static final int LINE_FRAMES = Integer.getInteger( "polytouch.audio.lineBuffer", 4096 );
+	static final double RAMP_MS = Double.parseDouble( System.getProperty( "polytouch.audio.rampMs", "5" ) );
+	static final double MIN_GAIN_DB = Double.parseDouble( System.getProperty( "polytouch.audio.minGainDb", "-80" ) );
+
+	// feedback target: linear amplitude, frequency and duration in frames (0 = until the next target)
+	static final class Target {
+		final double amplitude;
+		final float gain;
+		final double freq;
+		final long frames;
+		final TrackingSample CAUSE; // tracked sample that triggered the target (latency tracing), may be null
+		final long publishedNs = System.nanoTime();
+
+		Target( float gain, double amplitude, double freq, long frames, TrackingSample CAUSE ) {
+			this.gain = gain;
+			this.amplitude = amplitude;
+			this.freq = freq;
+			this.frames = frames;
+			this.CAUSE = CAUSE;
+		}
+	}
+
+	// tone that starts at an absolute frame position of the rendered stream (frame 0 = first frame played)
+	static final class ScheduledTone {
+		final int index;
+		final float gain;
+		final double freq;
+		final long onsetFrame;
+		final long frames;
+
+		ScheduledTone( int index, float gain, double freq, long onsetFrame, long frames ) {
+			this.index = index;
+			this.gain = gain;
+			this.freq = freq;
+			this.onsetFrame = onsetFrame;
+			this.frames = frames;
+		}
+	}
+
+	// receives the onset of every scheduled tone on the engine thread, times in System.nanoTime()
+	interface OnsetListener {
+		void onset( ScheduledTone TONE, long scheduledNs, long actualNs );
+	}
+
+	private static final Target SILENCE = new Target( 0f, 0, Double.NaN, 0, null );
+
+	private final AudioSink SINK;
+	private final float sampleRate;
+	private final WavetableOscillator OSCILLATOR;
+	private final byte[] BUFFER = new byte[CHUNK_FRAMES * 2];
+	private final int rampFrames;
+
+	private final AtomicReference< Target > TARGET = new AtomicReference< Target >( SILENCE );
+	private final AtomicLong UNDERRUNS = new AtomicLong();
+	private final AtomicLong FRAMES = new AtomicLong();
+
+	// render state, engine thread only
+	private Target CURRENT = SILENCE;
+	private Target TRACE = null; // target whose first chunk has not been written yet
+	private double amplitude = 0;
+	private double rampTarget = 0;
+	private double amplitudeStep = 0;
+	private int rampLeft = 0;
+	private long frame = 0;
+	private long endFrame = -1; // end of a tone(), -1 if the target holds
+
+	// scheduled tones in onset order; next tone to start (render) and next onset to detect at the device (after write)
+	private volatile ScheduledTone[] SCHEDULE = new ScheduledTone[0];
+	private volatile OnsetListener ONSETS = null;
+	private ScheduledTone[] RENDERING = SCHEDULE;
+	private long[] STARTED = new long[0]; // frame at which each scheduled tone was started (later than its onset if scheduled too late)
+	private int nextStart = 0;
+	private int nextOnset = 0;
+	private long frameZeroNs = -1; // System.nanoTime() at which the device played frame 0
+
+	private Thread THREAD;
+	private volatile boolean running = false;
+
+	AudioEngine( AudioSink SINK, double sampleRate, double toneAmp ) {
+		this.SINK = SINK;
+		this.sampleRate = (float) sampleRate;
+		this.OSCILLATOR = new WavetableOscillator( sampleRate, toneAmp );
+		this.rampFrames = Math.max( 1, (int) ( sampleRate * RAMP_MS / 1000 ) );
+	}
+
+	// linear amplitude of GAIN (0..1), as set by VOLUME.setValue(VOLUME.getMinimum() * (1 - GAIN)) on the line before
+	static double amplitude( float gain ) {
+		return Math.pow( 10, MIN_GAIN_DB * ( 1 - gain ) / 20 );
+	}
+
+	// precompute the period of a frequency before the session starts
+	public void cache( double freq ) {
+		OSCILLATOR.cache( freq );
+	}
+
+	// play freq at gain until the next target
+	public void set( float gain, double freq, TrackingSample CAUSE ) {
+		Target T = TARGET.get();
+		if ( T.frames == 0 && T.gain == gain && T.freq == freq && T != SILENCE )
+			return; // unchanged
+		TARGET.set( new Target( gain, amplitude( gain ), freq, 0, CAUSE ) );
+	}
+
+	// play freq at gain for duration seconds, then fade out
+	public void tone( float gain, double freq, double duration, TrackingSample CAUSE ) {
+		TARGET.set( new Target( gain, amplitude( gain ), freq, Math.max( 1, (long) ( sampleRate * duration ) + 1 ), CAUSE ) );
+	}
+
+	// fade out
+	public void silence() {
+		TARGET.set( SILENCE );
+	}
+
+	// start TONES (sorted by onset frame) at their frame positions, replaces the previous schedule
+	public void schedule( ScheduledTone[] TONES, OnsetListener LISTENER ) {
+		ONSETS = LISTENER;
+		SCHEDULE = TONES.clone();
+	}
+
+	public double sampleRate() {
+		return sampleRate;
+	}
+
+	public long underruns() {
+		return UNDERRUNS.get();
+	}
+
+	public long framesRendered() {
+		return FRAMES.get();
+	}
+
+	// frames played by the device (sync markers of the SessionClock)
+	public long framePosition() {
+		return SINK.framePosition();
+	}
+
+	public void start() throws Exception {
+		SINK.open( sampleRate, LINE_FRAMES );
+		running = true;
+		THREAD = new Thread( "PolyTouch-audio" ) {
+			public void run() {
+				while ( running ) {
+					int len = render();
+					if ( SINK.starved() )
+						UNDERRUNS.incrementAndGet();
+					SINK.write( BUFFER, 0, len );
+					if ( TRACE != null ) {
+						traceWritten( TRACE );
+						TRACE = null;
+					}
+					detectOnsets();
+				}
+				SINK.close();
+			}
+		};
+		THREAD.setDaemon( true );
+		THREAD.setPriority( Thread.MAX_PRIORITY );
+		THREAD.start();
+	}
+
+	// stop rendering; the sink plays what is buffered and is closed
+	public void stop() {
+		running = false;
+		try {
+			if ( THREAD != null && THREAD != Thread.currentThread() )
+				THREAD.join( 1000 );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// render the next chunk into BUFFER, returns the number of bytes (engine thread, or a benchmark without thread)
+	int render() {
+		Target T = TARGET.get();
+		if ( T != CURRENT ) {
+			CURRENT = T;
+			TRACE = T;
+			if ( T.freq == T.freq ) // not NaN (silence keeps the frequency while fading out)
+				OSCILLATOR.setFrequency( T.freq );
+			rampTo( T.amplitude );
+			endFrame = T.frames > 0 ? frame + T.frames : -1;
+		}
+
+		if ( RENDERING != SCHEDULE ) { // new schedule
+			RENDERING = SCHEDULE;
+			STARTED = new long[RENDERING.length];
+			nextStart = 0;
+			nextOnset = 0;
+		}
+
+		int len = 0;
+		int left = CHUNK_FRAMES;
+		while ( left > 0 ) {
+			while ( nextStart < RENDERING.length && RENDERING[nextStart].onsetFrame <= frame ) { // onset of a scheduled tone (late ones start now)
+				STARTED[nextStart] = frame;
+				ScheduledTone TONE = RENDERING[nextStart++];
+				OSCILLATOR.setFrequency( TONE.freq );
+				rampTo( amplitude( TONE.gain ) );
+				endFrame = frame + TONE.frames;
+			}
+			if ( endFrame == frame ) { // end of tone
+				rampTo( 0 );
+				endFrame = -1;
+			}
+			int n = left;
+			if ( endFrame >= 0 )
+				n = (int) Math.min( n, endFrame - frame );
+			if ( nextStart < RENDERING.length )
+				n = (int) Math.min( n, RENDERING[nextStart].onsetFrame - frame );
+			if ( rampLeft > 0 ) {
+				n = Math.min( n, rampLeft );
+				len += OSCILLATOR.render( BUFFER, len, n, amplitude, amplitudeStep );
+				amplitude += amplitudeStep * n;
+				rampLeft -= n;
+				if ( rampLeft == 0 )
+					amplitude = rampTarget;
+			} else {
+				len += OSCILLATOR.render( BUFFER, len, n, amplitude, 0 );
+			}
+			frame += n;
+			left -= n;
+		}
+		FRAMES.addAndGet( CHUNK_FRAMES );
+		return len;
+	}
+
+	// report scheduled tones whose onset frame has been played by the device (engine thread, after every write)
+	private void detectOnsets() {
+		if ( nextOnset >= nextStart )
+			return;
+		long position = SINK.framePosition();
+		long now = System.nanoTime();
+		if ( frameZeroNs < 0 && position > 0 )
+			frameZeroNs = now - (long) ( position * 1e9 / sampleRate );
+		while ( nextOnset < nextStart && position >= STARTED[nextOnset] ) {
+			long started = STARTED[nextOnset];
+			ScheduledTone TONE = RENDERING[nextOnset++];
+			long scheduledNs = frameZeroNs + (long) ( TONE.onsetFrame * 1e9 / sampleRate );
+			long actualNs = now - (long) ( ( position - started ) * 1e9 / sampleRate );
+			OnsetListener LISTENER = ONSETS;
+			if ( LISTENER != null )
+				LISTENER.onset( TONE, scheduledNs, actualNs );
+		}
+	}
+
+	private void rampTo( double target ) {
+		rampTarget = target;
+		rampLeft = rampFrames;
+		amplitudeStep = ( target - amplitude ) / rampFrames;
+	}
+
+	// latency of a feedback change: from the feedback decision and from touch ingress until it is handed to the device
+	private static void traceWritten( Target T ) {
+		long writtenNs = System.nanoTime();
+		LatencyTrace.FEEDBACK_TO_AUDIO.record( writtenNs - T.publishedNs );
+		if ( T.CAUSE != null )
+			LatencyTrace.INGRESS_TO_AUDIO.record( writtenNs - T.CAUSE.ingressNs );
+	}
+}
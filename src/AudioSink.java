@@ -0,0 +1,19 @@
+// AUDIO SINK - destination of the 16-bit signed little Endian mono PCM rendered by the AudioEngine.
+// Implementations: LineAudioSink (sound card, SourceDataLine), NullAudioSink (discards samples at the pace of a sound card)
+// and FileAudioSink (WAV file at the pace of a sound card), so that feedback can run headless.
+interface AudioSink {
+	// acquire the device; bufferFrames is the size of the device buffer (latency between write and output)
+	void open( float sampleRate, int bufferFrames ) throws Exception;
+
+	// true if the device buffer has run empty since the last write (underrun), false before the first write
+	boolean starved();
+
+	// number of frames played by the device since the first write (position of the sound leaving the card)
+	long framePosition();
+
+	// write len bytes, blocks while the device buffer is full
+	void write( byte[] BUFFER, int offset, int len );
+
+	// play what is buffered and release the device
+	void close();
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** FEEDBACK RULES - closed-loop feedback protocols as rules over the kinematic stream of the TrackingEngine.
+ *
+ *  A rule is written as  <condition> -> <actions>  e.g.  "relDist < targetZoneRad and eventType == moving -> gain 0.6"
+ *  - condition: comparisons joined by "and", or "else" (always true); a comparison is  <variable> <op> <value>  separated by spaces,
+ *    or  in <zone>  (the COM is in the Zone with this name, looked up in the ZoneIndex of the session)
+ *    variables: relDist, bodySpeed, relHead, elapDistTot, xCOM, yCOM, eventType, time (tracked time in sec),
+ *    identity (animal of the sample, see IdentityTracker)
+ *    ops: < <= > >= == !=
+ *    values: numbers, session parameters (targetZoneRad, targetZoneX, targetZoneY, toneFreq, toneDur, sessionDur)
+ *    or event types (immobile, moving, hover, down, up)
+ *  - actions: "gain g" (0..1, as the former MASTER_GAIN control), "frequency f" (Hz) and "silence"; a value that is not given
+ *    keeps the value of the previous target
+ *  The rules are compiled once. On every tracked sample the first rule whose condition holds selects the feedback target, and
+ *  the target is only sent to the AudioEngine (and logged in sesAudioFile) when it differs from the previous one.
+ *
+ *  With prediction (polytouch.filter.predict, see Kinematics) relDist, xCOM, yCOM and the zones are evaluated on the predicted COM.
+ *
+ *  Built-in rule sets reproduce protocols 1 and 2 (see PROTOCOL_1 and PROTOCOL_2_*); a rule file given with polytouch.rules
+ *  (one rule per line, % starts a comment) replaces them, so new protocols need no code changes.
+ */
+class FeedbackRules implements TrackingListener {
+
+	/** --- PROTOCOL 1: POSITIONAL FEEDBACK IS PROVIDED AS A DISCRETE 1 SEC 450 HZ TONE PULSE
+	 *  IF THE ANIMAL IS DETECTED IN THE VIRTUAL TARGET ZONE
+	 * 	- Session 1: no feedback
+	 *  - Session 2-4: toneFreq at gain 0.6 while the animal is in the target zone (tracked time > 0.0 sec)
+	 *  - Session 5: pseudo-random presentation of 10s 39,49,59 dB (3x each), not rule based (StimulusScheduler)
+	 */
+	static final String[] PROTOCOL_1 = {
+		"relDist < targetZoneRad and time > 0 -> gain 0.6 frequency toneFreq",
+		"else -> gain 0 frequency toneFreq",
+	};
+
+	/** --- PROTOCOL 2: SPATIAL FEEDBACK IS PROVIDED AS A CONTINUOUS FREQUENCY MODULATED TONE
+	 *	THAT SCALES WITH THE ANIMAL'S DISTANCE TO A TARGET LOCATION (distance bands of 5 cm)
+	 * 	- Session 1: no feedback
+	 *  - Session 2: feedback with close distance~frequencies 150-300-450-600-760 Hz tone 49dB (gain 0.8)
+	 *  - Session 3: feedback with close distance~frequencies 760-600-450-300-150 Hz, at the gain left by init() (0)
+	 */
+	static final String[] PROTOCOL_2_LOW_HIGH = {
+		"relDist < 5 -> gain 0.8 frequency 150",
+		"relDist > 5 and relDist < 10 -> gain 0.8 frequency 300",
+		"relDist > 10 and relDist < 15 -> gain 0.8 frequency 450",
+		"relDist > 15 and relDist < 20 -> gain 0.8 frequency 600",
+		"else -> gain 0.8 frequency 760",
+	};
+
+	static final String[] PROTOCOL_2_HIGH_LOW = {
+		"relDist < 5 -> gain 0 frequency 760",
+		"relDist > 5 and relDist < 10 -> gain 0 frequency 600",
+		"relDist > 10 and relDist < 15 -> gain 0 frequency 450",
+		"relDist > 15 and relDist < 20 -> gain 0 frequency 300",
+		"else -> gain 0 frequency 150",
+	};
+
+	private static final String[] VARIABLES = { "relDist", "bodySpeed", "relHead", "elapDistTot", "xCOM", "yCOM", "eventType", "time", "identity" };
+	private static final String[] OPS = { "<", "<=", ">", ">=", "==", "!=" };
+	private static final String[] EVENT_TYPES = { "immobile", "moving", "hover", "down", "up" }; // eventType 0..4
+
+	// compiled rules: comparisons of rule r are FIRST[r] .. FIRST[r+1]-1
+	private final int[] FIRST;
+	private final int[] VARIABLE;
+	private final int[] OP;
+	private final double[] VALUE;
+	private final float[] GAIN; // NaN: keep, SILENT: silence
+	private final double[] FREQUENCY; // NaN: keep
+	private final String[] SOURCE;
+
+	private final TriggerSound FEEDBACK; // feedback of the session, null: rules are only matched
+
+	// zone membership of the current sample (only looked up if a rule has an "in <zone>" comparison)
+	private final ZoneIndex ZONES;
+	private final long[] MEMBERSHIP;
+	private boolean usesZones = false;
+
+	static final float SILENT = -1f;
+
+	// current target, tracking thread only
+	private float gain = Float.NaN;
+	private double frequency = Double.NaN;
+
+	FeedbackRules( String[] RULES, HashMap< String, Double > SYMBOLS, ZoneIndex ZONES, TriggerSound FEEDBACK ) {
+		this.ZONES = ZONES;
+		this.FEEDBACK = FEEDBACK;
+		this.MEMBERSHIP = ZONES != null ? ZONES.newMembership() : null;
+		int n = RULES.length;
+		FIRST = new int[n + 1];
+		GAIN = new float[n];
+		FREQUENCY = new double[n];
+		SOURCE = RULES.clone();
+		ArrayList< double[] > COMPARISONS = new ArrayList< double[] >();
+		for ( int r = 0; r < n; ++r ) {
+			FIRST[r] = COMPARISONS.size();
+			String[] PARTS = RULES[r].split( "->" );
+			if ( PARTS.length != 2 )
+				throw new IllegalArgumentException( "Invalid rule (expected <condition> -> <actions>): " + RULES[r] );
+			compileCondition( PARTS[0].trim(), SYMBOLS, COMPARISONS, RULES[r] );
+			compileActions( r, PARTS[1].trim(), SYMBOLS, RULES[r] );
+		}
+		FIRST[n] = COMPARISONS.size();
+		VARIABLE = new int[COMPARISONS.size()];
+		OP = new int[COMPARISONS.size()];
+		VALUE = new double[COMPARISONS.size()];
+		for ( int i = 0; i < COMPARISONS.size(); ++i ) {
+			VARIABLE[i] = (int) COMPARISONS.get( i )[0];
+			OP[i] = (int) COMPARISONS.get( i )[1];
+			VALUE[i] = COMPARISONS.get( i )[2];
+		}
+	}
+
+	// rules of the session (or of polytouch.rules), null if the session has no rule based feedback
+	static FeedbackRules forSession( SessionConfig CONFIG, ZoneIndex ZONES, TriggerSound FEEDBACK ) throws IOException {
+		int protocolID = CONFIG.protocolID;
+		int sessionID = CONFIG.sessionID;
+		HashMap< String, Double > SYMBOLS = CONFIG.symbols();
+
+		String rulesFile = System.getProperty( "polytouch.rules" );
+		if ( rulesFile != null )
+			return new FeedbackRules( readRules( new File( rulesFile ) ), SYMBOLS, ZONES, FEEDBACK );
+		if ( sessionID == 1 )
+			return null; // baseline, no feedback
+		if ( protocolID == 1 && sessionID != 5 )
+			return new FeedbackRules( PROTOCOL_1, SYMBOLS, ZONES, FEEDBACK );
+		if ( protocolID == 2 && sessionID == 2 )
+			return new FeedbackRules( PROTOCOL_2_LOW_HIGH, SYMBOLS, ZONES, FEEDBACK );
+		if ( protocolID == 2 && sessionID == 3 )
+			return new FeedbackRules( PROTOCOL_2_HIGH_LOW, SYMBOLS, ZONES, FEEDBACK );
+		return null;
+	}
+
+	static String[] readRules( File file ) throws IOException {
+		ArrayList< String > RULES = new ArrayList< String >();
+		BufferedReader in = new BufferedReader( new FileReader( file ) );
+		try {
+			String line;
+			while ( ( line = in.readLine() ) != null ) {
+				int comment = line.indexOf( '%' );
+				if ( comment >= 0 )
+					line = line.substring( 0, comment );
+				if ( line.trim().length() > 0 )
+					RULES.add( line.trim() );
+			}
+		} finally {
+			in.close();
+		}
+		return RULES.toArray( new String[RULES.size()] );
+	}
+
+	public int size() {
+		return SOURCE.length;
+	}
+
+	// --- evaluation, tracking thread ---
+	public void sampleTracked( TrackingSample SAMPLE ) {
+		SessionMetrics.FEEDBACK_EVALUATIONS.increment();
+		int r = match( SAMPLE );
+		if ( r < 0 )
+			return;
+		float nextGain = GAIN[r] != GAIN[r] ? gain : GAIN[r];
+		double nextFrequency = FREQUENCY[r] != FREQUENCY[r] ? frequency : FREQUENCY[r];
+		if ( Float.compare( nextGain, gain ) == 0 && Double.compare( nextFrequency, frequency ) == 0 )
+			return; // no transition
+		gain = nextGain;
+		frequency = nextFrequency;
+		if ( FEEDBACK != null )
+			FEEDBACK.feedback( gain, frequency, SAMPLE );
+	}
+
+	public void stateChanged( TrackingSample view ) {
+	}
+
+	// index of the first rule whose condition holds for SAMPLE, -1 if none
+	int match( TrackingSample SAMPLE ) {
+		if ( usesZones )
+			ZONES.query( SAMPLE.xPredicted, SAMPLE.yPredicted, MEMBERSHIP );
+		for ( int r = 0; r < SOURCE.length; ++r ) {
+			boolean holds = true;
+			for ( int i = FIRST[r]; i < FIRST[r + 1] && holds; ++i )
+				holds = compare( variable( VARIABLE[i], SAMPLE ), OP[i], VALUE[i] );
+			if ( holds )
+				return r;
+		}
+		return -1;
+	}
+
+	private double variable( int variable, TrackingSample SAMPLE ) {
+		if ( variable < 0 ) // zone -1 - variable
+			return ZoneIndex.member( MEMBERSHIP, -1 - variable ) ? 1 : 0;
+		switch ( variable ) {
+		case 0: return SAMPLE.relDistPredicted;
+		case 1: return SAMPLE.bodySpeed;
+		case 2: return SAMPLE.relHead;
+		case 3: return SAMPLE.elapDistTot;
+		case 4: return SAMPLE.xPredicted;
+		case 5: return SAMPLE.yPredicted;
+		case 6: return SAMPLE.eventType;
+		case 7: return SAMPLE.endTime / 1000000000;
+		default: return SAMPLE.identity;
+		}
+	}
+
+	private static boolean compare( double a, int op, double b ) {
+		switch ( op ) {
+		case 0: return a < b;
+		case 1: return a <= b;
+		case 2: return a > b;
+		case 3: return a >= b;
+		case 4: return a == b;
+		default: return a != b;
+		}
+	}
+
+	// --- compilation ---
+	private void compileCondition( String condition, HashMap< String, Double > SYMBOLS, ArrayList< double[] > COMPARISONS, String rule ) {
+		if ( condition.equals( "else" ) )
+			return;
+		for ( String comparison : condition.split( "\\s+and\\s+" ) ) {
+			String[] T = comparison.trim().split( "\\s+" );
+			if ( T.length == 2 && T[0].equals( "in" ) ) {
+				int zone = ZONES != null ? ZONES.indexOf( T[1] ) : -1;
+				if ( zone < 0 )
+					throw new IllegalArgumentException( "Unknown zone '" + T[1] + "' in rule: " + rule );
+				COMPARISONS.add( new double[] { -1 - zone, 4, 1 } ); // zone membership == 1
+				usesZones = true;
+				continue;
+			}
+			if ( T.length != 3 )
+				throw new IllegalArgumentException( "Invalid comparison '" + comparison + "' in rule: " + rule );
+			int variable = indexOf( VARIABLES, T[0] );
+			int op = indexOf( OPS, T[1] );
+			if ( variable < 0 || op < 0 )
+				throw new IllegalArgumentException( "Invalid comparison '" + comparison + "' in rule: " + rule );
+			COMPARISONS.add( new double[] { variable, op, value( T[2], SYMBOLS, rule ) } );
+		}
+	}
+
+	private void compileActions( int r, String actions, HashMap< String, Double > SYMBOLS, String rule ) {
+		GAIN[r] = Float.NaN;
+		FREQUENCY[r] = Double.NaN;
+		String[] T = actions.split( "\\s+" );
+		for ( int i = 0; i < T.length; ++i ) {
+			if ( T[i].equals( "silence" ) ) {
+				GAIN[r] = SILENT;
+			} else if ( T[i].equals( "gain" ) && i + 1 < T.length ) {
+				GAIN[r] = (float) value( T[++i], SYMBOLS, rule );
+				if ( !( GAIN[r] >= 0 && GAIN[r] <= 1 ) )
+					throw new IllegalArgumentException( "Gain outside 0..1 in rule: " + rule );
+			} else if ( T[i].equals( "frequency" ) && i + 1 < T.length ) {
+				FREQUENCY[r] = value( T[++i], SYMBOLS, rule );
+			} else {
+				throw new IllegalArgumentException( "Invalid action '" + T[i] + "' in rule: " + rule );
+			}
+		}
+	}
+
+	private static double value( String token, HashMap< String, Double > SYMBOLS, String rule ) {
+		Double symbol = SYMBOLS.get( token );
+		if ( symbol != null )
+			return symbol;
+		int eventType = indexOf( EVENT_TYPES, token );
+		if ( eventType >= 0 )
+			return eventType;
+		try {
+			return Double.parseDouble( token );
+		} catch ( NumberFormatException e ) {
+			throw new IllegalArgumentException( "Unknown value '" + token + "' in rule: " + rule );
+		}
+	}
+
+	private static int indexOf( String[] NAMES, String name ) {
+		for ( int i = 0; i < NAMES.length; ++i ) {
+			if ( NAMES[i].equals( name ) )
+				return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,82 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+// FILE AUDIO SINK - records the rendered feedback in a WAV file (16-bit mono PCM), at the pace of a sound card (NullAudioSink).
+// The RIFF and data chunk sizes are written when the sink is closed.
+class FileAudioSink extends NullAudioSink {
+	private final File file;
+	private OutputStream OUT;
+	private long dataBytes = 0;
+
+	FileAudioSink( File file ) {
+		this.file = file;
+	}
+
+	public void open( float sampleRate, int bufferFrames ) throws Exception {
+		super.open( sampleRate, bufferFrames );
+		OUT = new BufferedOutputStream( new FileOutputStream( file ), 65536 );
+		byte[] HEADER = new byte[44];
+		put( HEADER, 0, "RIFF" );
+		putInt( HEADER, 4, 36 ); // RIFF size, updated on close
+		put( HEADER, 8, "WAVE" );
+		put( HEADER, 12, "fmt " );
+		putInt( HEADER, 16, 16 ); // fmt chunk size
+		putShort( HEADER, 20, 1 ); // PCM
+		putShort( HEADER, 22, 1 ); // mono
+		putInt( HEADER, 24, Math.round( sampleRate ) );
+		putInt( HEADER, 28, Math.round( sampleRate ) * 2 ); // bytes per second
+		putShort( HEADER, 32, 2 ); // bytes per frame
+		putShort( HEADER, 34, 16 ); // bits per sample
+		put( HEADER, 36, "data" );
+		putInt( HEADER, 40, 0 ); // data size, updated on close
+		OUT.write( HEADER );
+	}
+
+	protected void consume( byte[] BUFFER, int offset, int len ) {
+		try {
+			OUT.write( BUFFER, offset, len );
+			dataBytes += len;
+		} catch ( IOException e ) {
+			e.printStackTrace();
+		}
+	}
+
+	public void close() {
+		try {
+			OUT.close();
+			RandomAccessFile RAF = new RandomAccessFile( file, "rw" );
+			try {
+				byte[] SIZE = new byte[4];
+				putInt( SIZE, 0, (int) Math.min( 36 + dataBytes, 0xffffffffL ) );
+				RAF.seek( 4 );
+				RAF.write( SIZE );
+				putInt( SIZE, 0, (int) Math.min( dataBytes, 0xffffffffL ) );
+				RAF.seek( 40 );
+				RAF.write( SIZE );
+			} finally {
+				RAF.close();
+			}
+		} catch ( IOException e ) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void put( byte[] B, int offset, String s ) {
+		for ( int i = 0; i < s.length(); ++i )
+			B[offset + i] = (byte) s.charAt( i );
+	}
+
+	private static void putShort( byte[] B, int offset, int v ) {
+		B[offset] = (byte) v;
+		B[offset + 1] = (byte) ( v >> 8 );
+	}
+
+	private static void putInt( byte[] B, int offset, int v ) {
+		putShort( B, offset, v );
+		putShort( B, offset + 2, v >> 16 );
+	}
+}
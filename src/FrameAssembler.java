@@ -0,0 +1,105 @@
+// FRAME ASSEMBLER - groups the pointer events of one input frame, so that the kinematics are advanced once per frame instead of once per
+// contact. A digitizer reports all of its contacts together, but the pointer callbacks deliver them one by one; the events of a frame are
+// collected in a packed int array (one record of FIELDS per event, in order of arrival) until the frame is complete:
+// - every current touch contact has reported (complete(); the mouse, pointerID 1, only reports when it moves and is not waited for), or
+// - a contact reports a second time (the next report has started, accepts() is false), or
+// - polytouch.frame.window us (1000) have passed since the first event of the frame (due()), for contacts that do not report.
+// A window of 0 makes every event its own frame. Used by the engine thread only.
+class FrameAssembler {
+	static final long WINDOW_NS = Long.getLong( "polytouch.frame.window", 1000 ) * 1000;
+
+	// fields of an event record
+	private static final int POINTER_ID = 0, EVENT_TYPE = 1, X = 2, Y = 3, PRESSURE = 4, SLOT = 5;
+	private static final int FIELDS = 6;
+
+	private final int[] EVENTS = new int[TouchInfoArray.MAX_CONTACTS * FIELDS];
+	private final int[] FRAME_OF_SLOT = new int[TouchInfoArray.MAX_CONTACTS]; // frame in which the contact of a slot last reported
+	private int frame = 1;
+	private int size = 0;
+	private int touches = 0; // events of contacts other than the mouse
+	private long firstNs, lastNs;
+
+	FrameAssembler() {
+		if ( WINDOW_NS < 0 )
+			throw new IllegalArgumentException( "Invalid frame window: " + WINDOW_NS / 1000 );
+	}
+
+	// false if the event of the contact in slot (-1: new contact) starts a new frame
+	boolean accepts( int slot, long ingressNs ) {
+		if ( size == 0 )
+			return true;
+		if ( size * FIELDS == EVENTS.length || ingressNs - firstNs >= Math.max( WINDOW_NS, 1 ) )
+			return false;
+		return slot < 0 || FRAME_OF_SLOT[slot] != frame;
+	}
+
+	// add an event; slot: its contact in the TouchInfoArray (-1 if the table was full)
+	void add( int pointerID, int eventType, int x, int y, int pressure, int slot, long ingressNs ) {
+		int p = size * FIELDS;
+		EVENTS[p + POINTER_ID] = pointerID;
+		EVENTS[p + EVENT_TYPE] = eventType;
+		EVENTS[p + X] = x;
+		EVENTS[p + Y] = y;
+		EVENTS[p + PRESSURE] = pressure;
+		EVENTS[p + SLOT] = slot;
+		if ( slot >= 0 )
+			FRAME_OF_SLOT[slot] = frame;
+		if ( size == 0 )
+			firstNs = ingressNs;
+		lastNs = ingressNs;
+		size++;
+		if ( pointerID != 1 )
+			touches++;
+	}
+
+	// true if the frame has an event of each of the touch contacts (TouchInfoArray.touches())
+	boolean complete( int touchContacts ) {
+		return size > 0 && ( touches >= touchContacts || WINDOW_NS == 0 );
+	}
+
+	// time at which the frame is closed without the missing contacts
+	long due() {
+		return firstNs + WINDOW_NS;
+	}
+
+	// start the next frame
+	void clear() {
+		size = 0;
+		touches = 0;
+		frame++;
+	}
+
+	// --- events of the frame, 0 .. size()-1 ---
+	int size() {
+		return size;
+	}
+
+	int pointerID( int i ) {
+		return EVENTS[i * FIELDS + POINTER_ID];
+	}
+
+	int eventType( int i ) {
+		return EVENTS[i * FIELDS + EVENT_TYPE];
+	}
+
+	int x( int i ) {
+		return EVENTS[i * FIELDS + X];
+	}
+
+	int y( int i ) {
+		return EVENTS[i * FIELDS + Y];
+	}
+
+	int pressure( int i ) {
+		return EVENTS[i * FIELDS + PRESSURE];
+	}
+
+	int slot( int i ) {
+		return EVENTS[i * FIELDS + SLOT];
+	}
+
+	// ingress time of the last event (time of the frame)
+	long ingressNs() {
+		return lastNs;
+	}
+}
@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+// IDENTITY TRACKER - one track per animal instead of one global centre of mass, for sessions with several animals in the arena.
+// On every pointer event the contact points are clustered into bodies (contacts closer than polytouch.identity.radius pixels belong to
+// the same body, found with a uniform grid of that cell size so that only the 3x3 neighbouring cells are compared) and the clusters are
+// associated with the existing tracks: cluster-track pairs closer than polytouch.identity.gate pixels (default: radius) are assigned
+// greedily, nearest pair first. A cluster without track starts a new identity (numbered from 1), a track that has not been matched for
+// polytouch.identity.timeout ms (1000) is dropped. Every track has its own Kinematics, advanced once per input frame (FrameAssembler) with
+// the centroid of its cluster when one of its contacts moved, so COM, speed, heading, relDist and walked distance are computed per identity.
+// All arrays are allocated once; the work per frame is linear in the number of contacts (for bounded contact density).
+class IdentityTracker {
+	static final double RADIUS = Double.parseDouble( System.getProperty( "polytouch.identity.radius", "0" ) ); // 0 = one global COM
+	static final double GATE = Double.parseDouble( System.getProperty( "polytouch.identity.gate", String.valueOf( RADIUS ) ) );
+	static final double TIMEOUT_NS = Long.getLong( "polytouch.identity.timeout", 1000 ) * 1000000.0;
+	static final int MAX_TRACKS = Integer.getInteger( "polytouch.identity.max", 16 );
+
+	private final double targetZoneX, targetZoneY, pixelconv;
+
+	// contacts of the current event (mouse excluded) and their union-find parents
+	private final int[] CX = new int[TouchInfoArray.MAX_CONTACTS];
+	private final int[] CY = new int[TouchInfoArray.MAX_CONTACTS];
+	private final int[] CID = new int[TouchInfoArray.MAX_CONTACTS];
+	private final int[] PARENT = new int[TouchInfoArray.MAX_CONTACTS];
+	private final int[] NEXT = new int[TouchInfoArray.MAX_CONTACTS]; // next contact in the same grid cell
+	private final int[] CONTACT_OF_SLOT = new int[TouchInfoArray.MAX_CONTACTS]; // TouchInfoArray slot -> contact (-1: mouse)
+
+	// grid cells (open addressing, cleared by bumping the generation)
+	private final int mask;
+	private final long[] CELL_KEY;
+	private final int[] CELL_HEAD, CELL_GEN;
+	private int generation = 0;
+
+	// clusters: contact -> cluster, centroid, track
+	private final int[] CLUSTER = new int[TouchInfoArray.MAX_CONTACTS];
+	private final double[] SX = new double[TouchInfoArray.MAX_CONTACTS];
+	private final double[] SY = new double[TouchInfoArray.MAX_CONTACTS];
+	private final int[] COUNT = new int[TouchInfoArray.MAX_CONTACTS];
+	private final int[] CLUSTER_TRACK = new int[TouchInfoArray.MAX_CONTACTS];
+
+	// tracks: slot -> identity (0 = free), last centroid and time matched, kinematics
+	private final int[] TRACK_ID = new int[MAX_TRACKS];
+	private final double[] TRACK_X = new double[MAX_TRACKS];
+	private final double[] TRACK_Y = new double[MAX_TRACKS];
+	private final double[] TRACK_SEEN = new double[MAX_TRACKS];
+	private final boolean[] TRACK_STEPPED = new boolean[MAX_TRACKS];
+	private final boolean[] TRACK_MATCHED = new boolean[MAX_TRACKS];
+	private final int[] TRACK_FRAME = new int[MAX_TRACKS]; // last frame in which the track was advanced
+	private int frame = 0;
+	private final Kinematics[] TRACK_KINEMATICS = new Kinematics[MAX_TRACKS];
+	private int nextID = 1;
+
+	// candidate pairs: squared distance (float bits, ordered like the distance) << 32 | cluster << 16 | track
+	private final long[] PAIRS = new long[TouchInfoArray.MAX_CONTACTS * MAX_TRACKS];
+
+	IdentityTracker( double targetZoneX, double targetZoneY, double pixelconv ) {
+		if ( !( RADIUS > 0 ) || TouchInfoArray.MAX_CONTACTS > 65535 || MAX_TRACKS > 65535 )
+			throw new IllegalArgumentException( "Invalid identity tracking: radius " + RADIUS + ", max " + MAX_TRACKS );
+		this.targetZoneX = targetZoneX;
+		this.targetZoneY = targetZoneY;
+		this.pixelconv = pixelconv;
+		int capacity = Integer.highestOneBit( 2 * TouchInfoArray.MAX_CONTACTS - 1 ) << 1;
+		mask = capacity - 1;
+		CELL_KEY = new long[capacity];
+		CELL_HEAD = new int[capacity];
+		CELL_GEN = new int[capacity];
+		Arrays.fill( CELL_GEN, -1 );
+	}
+
+	// cluster the contacts, associate the clusters with the tracks and advance every track with a contact in FRAME once;
+	// sets TRACKS[i] to the track slot of event i of the frame, -1 if it has none (mouse, no free track)
+	void update( TouchInfoArray TOUCHARRAY, FrameAssembler FRAME, int[] TRACKS, double endTime ) {
+		int n = 0;
+		for ( int slot = TOUCHARRAY.first(); slot != -1 && n < CX.length; slot = TOUCHARRAY.next( slot ) ) {
+			// Ignore computer mouse events
+			if ( TOUCHARRAY.pointerID( slot ) != 1 ) {
+				CX[n] = TOUCHARRAY.x( slot );
+				CY[n] = TOUCHARRAY.y( slot );
+				CID[n] = TOUCHARRAY.pointerID( slot );
+				CONTACT_OF_SLOT[slot] = n;
+				n++;
+			} else {
+				CONTACT_OF_SLOT[slot] = -1;
+			}
+		}
+		int nClusters = cluster( n );
+		expire( endTime );
+		associate( nClusters, endTime );
+
+		frame++;
+		for ( int i = 0; i < FRAME.size(); ++i ) {
+			int slot = FRAME.slot( i );
+			int contact = slot < 0 ? -1 : CONTACT_OF_SLOT[slot];
+			int track = contact < 0 ? -1 : CLUSTER_TRACK[CLUSTER[contact]];
+			if ( track >= 0 && TRACK_FRAME[track] != frame ) {
+				int c = CLUSTER[contact];
+				TRACK_KINEMATICS[track].timestamp( endTime );
+				TRACK_KINEMATICS[track].step( SX[c], SY[c] );
+				TRACK_STEPPED[track] = true;
+				TRACK_FRAME[track] = frame;
+			}
+			TRACKS[i] = track;
+		}
+	}
+
+	int identity( int track ) {
+		return TRACK_ID[track];
+	}
+
+	Kinematics kinematics( int track ) {
+		return TRACK_KINEMATICS[track];
+	}
+
+	// identities and smoothed COMs of the current tracks (arrays of length MAX_TRACKS), returns the number of tracks
+	int snapshot( int[] ID, double[] X, double[] Y ) {
+		int n = 0;
+		for ( int t = 0; t < MAX_TRACKS; ++t ) {
+			if ( TRACK_ID[t] != 0 && TRACK_STEPPED[t] ) {
+				ID[n] = TRACK_ID[t];
+				X[n] = TRACK_KINEMATICS[t].xCOM;
+				Y[n] = TRACK_KINEMATICS[t].yCOM;
+				n++;
+			}
+		}
+		return n;
+	}
+
+	// single-linkage clustering of contacts 0..n-1 within RADIUS; sets CLUSTER, SX/SY (centroid) and COUNT, returns the number of clusters
+	private int cluster( int n ) {
+		generation++;
+		double radiusSq = RADIUS * RADIUS;
+		for ( int i = 0; i < n; ++i ) {
+			PARENT[i] = i;
+			int ix = (int) Math.floor( CX[i] / RADIUS );
+			int iy = (int) Math.floor( CY[i] / RADIUS );
+			for ( int dy = -1; dy <= 1; ++dy ) {
+				for ( int dx = -1; dx <= 1; ++dx ) {
+					int cell = find( key( ix + dx, iy + dy ) );
+					if ( CELL_GEN[cell] != generation )
+						continue;
+					for ( int j = CELL_HEAD[cell]; j != -1; j = NEXT[j] ) {
+						double ddx = CX[i] - CX[j];
+						double ddy = CY[i] - CY[j];
+						if ( ddx * ddx + ddy * ddy <= radiusSq )
+							union( i, j );
+					}
+				}
+			}
+			int cell = find( key( ix, iy ) );
+			if ( CELL_GEN[cell] != generation ) {
+				CELL_GEN[cell] = generation;
+				CELL_KEY[cell] = key( ix, iy );
+				CELL_HEAD[cell] = -1;
+			}
+			NEXT[i] = CELL_HEAD[cell];
+			CELL_HEAD[cell] = i;
+		}
+
+		int nClusters = 0;
+		for ( int i = 0; i < n; ++i ) {
+			int root = root( i );
+			if ( root == i ) {
+				CLUSTER[i] = nClusters;
+				SX[nClusters] = 0;
+				SY[nClusters] = 0;
+				COUNT[nClusters] = 0;
+				nClusters++;
+			}
+		}
+		for ( int i = 0; i < n; ++i ) {
+			int c = CLUSTER[root( i )];
+			CLUSTER[i] = c;
+			SX[c] += CX[i];
+			SY[c] += CY[i];
+			COUNT[c]++;
+		}
+		for ( int c = 0; c < nClusters; ++c ) {
+			SX[c] /= COUNT[c];
+			SY[c] /= COUNT[c];
+		}
+		return nClusters;
+	}
+
+	private static long key( int ix, int iy ) {
+		return ( (long) ix << 32 ) | ( iy & 0xffffffffL );
+	}
+
+	// slot of the cell with this key, or the free slot where it would be inserted
+	private int find( long key ) {
+		int h = (int) ( key ^ ( key >>> 32 ) ) * 0x9E3779B9;
+		h ^= h >>> 16;
+		for ( int i = h & mask;; i = ( i + 1 ) & mask ) {
+			if ( CELL_GEN[i] != generation || CELL_KEY[i] == key )
+				return i;
+		}
+	}
+
+	private int root( int i ) {
+		while ( PARENT[i] != i ) {
+			PARENT[i] = PARENT[PARENT[i]];
+			i = PARENT[i];
+		}
+		return i;
+	}
+
+	private void union( int i, int j ) {
+		int a = root( i );
+		int b = root( j );
+		// keep the smaller index as root, so that the root of a cluster is its first contact
+		if ( a < b )
+			PARENT[b] = a;
+		else if ( b < a )
+			PARENT[a] = b;
+	}
+
+	private void expire( double endTime ) {
+		for ( int t = 0; t < MAX_TRACKS; ++t ) {
+			if ( TRACK_ID[t] != 0 && endTime - TRACK_SEEN[t] > TIMEOUT_NS )
+				TRACK_ID[t] = 0;
+		}
+	}
+
+	// gated greedy assignment of the clusters to the tracks, nearest pairs first; unmatched clusters start new tracks
+	private void associate( int nClusters, double endTime ) {
+		int nPairs = 0;
+		for ( int c = 0; c < nClusters; ++c ) {
+			CLUSTER_TRACK[c] = -1;
+			for ( int t = 0; t < MAX_TRACKS; ++t ) {
+				if ( TRACK_ID[t] == 0 )
+					continue;
+				double dx = SX[c] - TRACK_X[t];
+				double dy = SY[c] - TRACK_Y[t];
+				double dSq = dx * dx + dy * dy;
+				if ( dSq <= GATE * GATE )
+					PAIRS[nPairs++] = ( (long) Float.floatToIntBits( (float) dSq ) << 32 ) | ( (long) c << 16 ) | t;
+			}
+		}
+		Arrays.sort( PAIRS, 0, nPairs );
+		Arrays.fill( TRACK_MATCHED, false );
+		for ( int p = 0; p < nPairs; ++p ) {
+			int c = (int) ( PAIRS[p] >>> 16 ) & 0xffff;
+			int t = (int) PAIRS[p] & 0xffff;
+			if ( CLUSTER_TRACK[c] < 0 && !TRACK_MATCHED[t] ) {
+				CLUSTER_TRACK[c] = t;
+				TRACK_MATCHED[t] = true;
+			}
+		}
+		for ( int c = 0; c < nClusters; ++c ) {
+			int t = CLUSTER_TRACK[c];
+			if ( t < 0 ) {
+				t = newTrack();
+				if ( t < 0 )
+					continue;
+				CLUSTER_TRACK[c] = t;
+			}
+			TRACK_X[t] = SX[c];
+			TRACK_Y[t] = SY[c];
+			TRACK_SEEN[t] = endTime;
+		}
+	}
+
+	private int newTrack() {
+		for ( int t = 0; t < MAX_TRACKS; ++t ) {
+			if ( TRACK_ID[t] == 0 ) {
+				TRACK_ID[t] = nextID++;
+				TRACK_STEPPED[t] = false;
+				TRACK_MATCHED[t] = true;
+				TRACK_KINEMATICS[t] = new Kinematics( targetZoneX, targetZoneY, pixelconv );
+				return t;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,87 @@
+import java.awt.Component;
+import java.awt.Point;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import jwinpointer.JWinPointerReader;
+import jwinpointer.JWinPointerReader.PointerEventListener;
+
+// JWINPOINTER INPUT SOURCE - live touch frame input through the external library JWinPointer.jar (Windows only).
+// Pointer coordinates are converted from the root component to the tracking component before they are passed on.
+class JWinPointerInputSource implements PointerInputSource, PointerEventListener {
+	private final JFrame FRAME;
+	private final Component ROOTCOMPONENT; // coordinates we receive for pointer events are with respect to this component
+	private final Component TARGET; // coordinate system of the tracking arena
+	private final CopyOnWriteArrayList< PointerEventListener > LISTENERS = new CopyOnWriteArrayList< PointerEventListener >();
+	private JWinPointerReader pointerReader;
+	private volatile boolean running = false;
+
+	JWinPointerInputSource( JFrame FRAME, Component ROOT, Component TARGET ) {
+		this.FRAME = FRAME;
+		this.ROOTCOMPONENT = ROOT;
+		this.TARGET = TARGET;
+	}
+
+	// the same source is reused by the sessions that run in one JVM: listeners are added by Session.start and removed by Session.stop
+
+	public void addPointerEventListener( PointerEventListener listener ) {
+		LISTENERS.add( listener );
+	}
+
+	public void removePointerEventListener( PointerEventListener listener ) {
+		LISTENERS.remove( listener );
+	}
+
+	// the reader is created once, on the event dispatch thread (also when a Session is started from another thread)
+	public void start() {
+		running = true;
+		if ( pointerReader == null ) {
+			Runnable CREATE = new Runnable() {
+				public void run() {
+					pointerReader = new JWinPointerReader( FRAME );
+					pointerReader.addPointerEventListener( JWinPointerInputSource.this );
+				}
+			};
+			if ( SwingUtilities.isEventDispatchThread() ) {
+				CREATE.run();
+			} else {
+				try {
+					SwingUtilities.invokeAndWait( CREATE );
+				} catch ( Exception e ) {
+					throw new IllegalStateException( "Touch input not available: " + e.getMessage() );
+				}
+			}
+		}
+	}
+
+	// JWinPointerReader cannot be detached from the frame, events are no longer passed on
+	public void stop() {
+		running = false;
+	}
+
+	public boolean isFinished() {
+		return false;
+	}
+
+	public void pointerXYEvent(int deviceType, int pointerID, int eventType, boolean inverted, int x, int y, int pressure) {
+		if ( !running )
+			return;
+		Point TOUCH = SwingUtilities.convertPoint( ROOTCOMPONENT, x, y, TARGET );
+		for ( PointerEventListener LISTENER : LISTENERS )
+			LISTENER.pointerXYEvent( deviceType, pointerID, eventType, inverted, TOUCH.x, TOUCH.y, pressure );
+	}
+
+	public void pointerButtonEvent(int deviceType, int pointerID, int eventType, boolean inverted, int buttonIndex) {
+		if ( !running )
+			return;
+		for ( PointerEventListener LISTENER : LISTENERS )
+			LISTENER.pointerButtonEvent( deviceType, pointerID, eventType, inverted, buttonIndex );
+	}
+
+	public void pointerEvent( int deviceType, int pointerID, int eventType, boolean inverted) {
+		if ( !running )
+			return;
+		for ( PointerEventListener LISTENER : LISTENERS )
+			LISTENER.pointerEvent( deviceType, pointerID, eventType, inverted );
+	}
+}
@@ -0,0 +1,154 @@
+// KINEMATICS - centre-of-mass (COM) smoothing, walked distance, body speed, heading direction and distance to the virtual target.
+// The computations are the ones previously done in PolyTouchGUI.paintComponent(); they are now advanced by the TrackingEngine.
+// Smoothing can be replaced per signal by a SignalFilter (system properties, default legacy = the original computation):
+// polytouch.filter.com (x and y of the COM, legacy: average of the last 4 COMs), polytouch.filter.speed (speed = walked distance / time,
+// legacy: difference of the last two distances per time, 0 above 100 cm/s) and polytouch.filter.heading (legacy: arithmetic mean of the
+// last 8 headings, which breaks at 0/360 deg; use circular:N).
+// polytouch.filter.predict extrapolates the COM forward with the velocity of the COM filter, by a fixed lead in ms or by the measured
+// closed-loop latency (auto: mean ingress -> audio of LatencyTrace, at most MAX_LEAD_S); the predicted COM and relDist are used by
+// the FeedbackRules, so that feedback is decided on where the animal is when the tone starts instead of on a lagged average.
+class Kinematics {
+	static final String COM_FILTER = System.getProperty( "polytouch.filter.com", "legacy" );
+	static final String SPEED_FILTER = System.getProperty( "polytouch.filter.speed", "legacy" );
+	static final String HEADING_FILTER = System.getProperty( "polytouch.filter.heading", "legacy" );
+	static final String PREDICT = System.getProperty( "polytouch.filter.predict", "0" );
+	private static final boolean PREDICT_AUTO = PREDICT.equals( "auto" );
+	private static final double MAX_LEAD_S = 0.2;
+
+	private final double targetZoneX, targetZoneY; // centre target zone (in pixels)
+	private final double pixelconv; // pixel-to-cm-conversion factor
+
+	// Initialise tracking variables
+	double tsOld; double tsNew;
+	double xCOM; double xCOMOld; double xCOMNew; double xCOMTempOld = 0; double xCOMTempNew = 0;
+	double xCOM1; double xCOM2; double xCOM3; double xCOM4;
+	double yCOM; double yCOMOld; double yCOMNew; double yCOMTempOld = 0; double yCOMTempNew = 0;
+	double yCOM1; double yCOM2; double yCOM3; double yCOM4;
+	double relDist = 0;
+	double elapDist = 0; double elapDistOld = 0; double elapDistNew = 0; double elapDistTot = 0;
+	double tempSpeed;
+	double bodySpeed = 0;
+	double relHead = 0; double relHeadTemp = 0;
+	double relHead8 = 0; double relHead7 = 0; double relHead6 = 0; double relHead5 = 0;
+	double relHead4 = 0; double relHead3 = 0; double relHead2 = 0; double relHead1 = 0;
+
+	// filters (null: legacy) and the COM extrapolated by the lead time (equal to the COM without prediction)
+	private final SignalFilter FILTER_X, FILTER_Y, FILTER_SPEED, FILTER_HEADING;
+	private final double predictS; // fixed lead (s)
+	double xPredicted; double yPredicted; double relDistPredicted;
+
+	Kinematics( double targetZoneX, double targetZoneY, double pixelconv ) {
+		this.targetZoneX = targetZoneX;
+		this.targetZoneY = targetZoneY;
+		this.pixelconv = pixelconv;
+		FILTER_X = SignalFilter.parse( COM_FILTER );
+		FILTER_Y = SignalFilter.parse( COM_FILTER );
+		FILTER_SPEED = SignalFilter.parse( SPEED_FILTER );
+		FILTER_HEADING = SignalFilter.parse( HEADING_FILTER );
+		double lead = -1;
+		try {
+			lead = PREDICT_AUTO ? 0 : Double.parseDouble( PREDICT ) / 1000;
+		} catch ( NumberFormatException e ) {
+			// reported below
+		}
+		if ( !( lead >= 0 ) )
+			throw new IllegalArgumentException( "Invalid prediction: " + PREDICT );
+		predictS = lead;
+	}
+
+	// update time stamp (in nanoseconds)
+	void timestamp( double endTime ) {
+		tsOld = tsNew;
+		tsNew = endTime;
+	}
+
+	// Advance the kinematic state with a new raw COM; NaN (no touches detected) re-uses the previous COM
+	void step( double xCOMTemp, double yCOMTemp ) {
+		if (Double.isNaN(xCOMTemp)) {
+			xCOMTemp = xCOMTempOld;
+			yCOMTemp = yCOMTempOld;
+		} else {
+			xCOMTempOld = xCOMTempNew;
+			yCOMTempOld = yCOMTempNew;
+			xCOMTempNew = xCOMTemp;
+			yCOMTempNew = yCOMTemp;
+		}
+
+		double t = tsNew/1000000000; // s
+		if (FILTER_X == null) {
+			// interpolate centre-of-mass (COM) with last 4 COMs
+			xCOM4 = xCOM3; xCOM3 = xCOM2; xCOM2 = xCOM1;
+			xCOM1 = xCOMTemp; // update xCOM
+			xCOM = (xCOM1+xCOM2+xCOM3+xCOM4)/4;
+			yCOM4 = yCOM3; yCOM3 = yCOM2; yCOM2 = yCOM1;
+			yCOM1 = yCOMTemp; // update yCOM
+			yCOM = (yCOM1+yCOM2+yCOM3+yCOM4)/4;
+		} else {
+			xCOM = FILTER_X.filter(xCOMTemp, t);
+			yCOM = FILTER_Y.filter(yCOMTemp, t);
+		}
+		xCOMOld = xCOMNew; xCOMNew = xCOM;
+		yCOMOld = yCOMNew; yCOMNew = yCOM;
+
+		// compute walked distance (cm)
+		elapDist = (Math.sqrt(Math.pow(xCOMOld-xCOMNew,2) + Math.pow(yCOMOld-yCOMNew,2)))*pixelconv;
+		elapDistOld = elapDistNew; elapDistNew = elapDist; // update variables
+		elapDistTot = elapDistTot+elapDist;
+
+		// compute distance to virtual target (in cm)
+		double dx = xCOM - targetZoneX; // relative distance of point x from centre target zone (in pixels)
+		double dy = yCOM - targetZoneY; // relative distance of point y from centre  target zone (in pixels)
+		relDist = (Math.sqrt(Math.pow(dx,2) + Math.pow(dy,2)))*pixelconv; // compute relative distance of point x,y from target centerMagnet (in pixels)
+
+		// compute walked speed (cm/s)
+		double dt = (tsNew-tsOld)/1000000000;
+		if (FILTER_SPEED == null) {
+			tempSpeed = Math.abs(elapDistOld-elapDist)/dt;
+			if (tempSpeed > 100) {
+				bodySpeed = 0;
+			} else {
+				bodySpeed = tempSpeed;
+			}
+		} else {
+			tempSpeed = elapDist/dt;
+			if (tempSpeed <= 100) { // not for repeated time stamps and jumps above 100 cm/s: keep the previous speed
+				bodySpeed = FILTER_SPEED.filter(tempSpeed, t);
+			}
+		}
+
+		// compute heading direction (deg) between previous and current COM point
+		relHeadTemp = Math.atan2((yCOM-yCOMOld),(xCOM-xCOMOld))*180/Math.PI; // relative angle robot to center of target area
+		if (relHeadTemp < 0) {
+			relHeadTemp = relHeadTemp+360; // positive angles only
+		}
+		if (FILTER_HEADING == null) {
+			relHead8 = relHead7; relHead7 = relHead6; relHead6 = relHead5;
+			relHead5 = relHead4;
+			relHead4 = relHead3; relHead3 = relHead2; relHead2 = relHead1;
+			relHead1 = relHeadTemp;
+			relHead = (relHead8+relHead7+relHead6+relHead5+relHead4+relHead3+relHead2+relHead1)/8;
+		} else if (xCOM != xCOMOld || yCOM != yCOMOld) { // no heading without movement
+			relHead = FILTER_HEADING.filter(relHeadTemp, t);
+		}
+
+		// extrapolate the COM by the lead time (velocity of the COM filter, or of the last two COMs)
+		double lead = PREDICT_AUTO ? autoLead() : predictS;
+		if (lead > 0) {
+			double vx = FILTER_X != null ? FILTER_X.velocity() : (dt > 0 ? (xCOMNew-xCOMOld)/dt : 0);
+			double vy = FILTER_Y != null ? FILTER_Y.velocity() : (dt > 0 ? (yCOMNew-yCOMOld)/dt : 0);
+			xPredicted = xCOM + vx*lead;
+			yPredicted = yCOM + vy*lead;
+			relDistPredicted = (Math.sqrt(Math.pow(xPredicted-targetZoneX,2) + Math.pow(yPredicted-targetZoneY,2)))*pixelconv;
+		} else {
+			xPredicted = xCOM;
+			yPredicted = yCOM;
+			relDistPredicted = relDist;
+		}
+	}
+
+	// measured latency (s): ingress -> audio, before the first tone ingress -> computed
+	private static double autoLead() {
+		LatencyHistogram H = LatencyTrace.INGRESS_TO_AUDIO.count() > 0 ? LatencyTrace.INGRESS_TO_AUDIO : LatencyTrace.INGRESS_TO_COMPUTED;
+		return H.count() > 0 ? Math.min(MAX_LEAD_S, H.mean()/1000000000) : 0;
+	}
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// LATENCY HISTOGRAM - fixed-size log-linear histogram of latencies in nanoseconds.
+// Values below 2^SUB_BITS are counted exactly, larger values in buckets of 1/2^(SUB_BITS-1) relative width (about 3%),
+// up to 2^MAX_BITS ns (about 18 minutes). Recording is wait-free and allocation-free, so it can be used on the hot path.
+class LatencyHistogram {
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS; // 64
+	private static final int HALF_COUNT = SUB_COUNT >> 1; // 32
+	private static final int MAX_BITS = 40;
+
+	private final AtomicLongArray COUNTS = new AtomicLongArray( SUB_COUNT + ( MAX_BITS - SUB_BITS + 1 ) * HALF_COUNT );
+	private final AtomicLong COUNT = new AtomicLong();
+	private final AtomicLong SUM = new AtomicLong();
+	private final AtomicLong MAX = new AtomicLong();
+
+	public void record( long ns ) {
+		if ( ns < 0 )
+			ns = 0;
+		COUNTS.incrementAndGet( index( ns ) );
+		COUNT.incrementAndGet();
+		SUM.addAndGet( ns );
+		long max;
+		while ( ns > ( max = MAX.get() ) && !MAX.compareAndSet( max, ns ) )
+			;
+	}
+
+	// not atomic: only while nothing is recorded
+	public void reset() {
+		for ( int i = 0; i < COUNTS.length(); ++i )
+			COUNTS.set( i, 0 );
+		COUNT.set( 0 );
+		SUM.set( 0 );
+		MAX.set( 0 );
+	}
+
+	public long count() {
+		return COUNT.get();
+	}
+
+	public long max() {
+		return MAX.get();
+	}
+
+	public double mean() {
+		long n = COUNT.get();
+		return n == 0 ? 0 : (double) SUM.get() / n;
+	}
+
+	// value (upper bound of its bucket, at most max()) below which a fraction q of the recorded latencies fall
+	public long percentile( double q ) {
+		long n = COUNT.get();
+		if ( n == 0 )
+			return 0;
+		long rank = (long) Math.ceil( q * n );
+		long seen = 0;
+		for ( int i = 0; i < COUNTS.length(); ++i ) {
+			seen += COUNTS.get( i );
+			if ( seen >= Math.max( 1, rank ) )
+				return Math.min( upperBound( i ), MAX.get() );
+		}
+		return MAX.get();
+	}
+
+	private static int index( long ns ) {
+		if ( ns < SUB_COUNT )
+			return (int) ns;
+		int exponent = Math.min( 63 - Long.numberOfLeadingZeros( ns ), MAX_BITS ) - SUB_BITS + 1; // >= 1
+		int mantissa = (int) Math.min( ns >>> exponent, SUB_COUNT - 1 ); // in [HALF_COUNT, SUB_COUNT)
+		return SUB_COUNT + ( exponent - 1 ) * HALF_COUNT + ( mantissa - HALF_COUNT );
+	}
+
+	private static long upperBound( int index ) {
+		if ( index < SUB_COUNT )
+			return index;
+		int exponent = ( index - SUB_COUNT ) / HALF_COUNT + 1;
+		int mantissa = ( index - SUB_COUNT ) % HALF_COUNT + HALF_COUNT;
+		return ( ( (long) mantissa + 1 ) << exponent ) - 1;
+	}
+}
@@ -0,0 +1,48 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+// LATENCY TRACE - closed-loop latency of every tracked sample, from touch ingress to the audio line, per stage:
+// - ingress -> computed: pointer callback received until the kinematic sample is published by the TrackingEngine
+// - computed -> feedback: sample published until it is seen by the feedback module (TriggerSound)
+// - feedback -> audio: feedback target published until the first chunk rendered with it is handed to the AudioSink by the AudioEngine
+// - ingress -> audio: end-to-end closed-loop latency (of feedback changes)
+// A summary (count, mean, p50/p99/p99.9/max per stage, rendered audio frames and underruns) is written at the end of the session next to sesAudioFile.
+// The histograms are shared by the process (one session runs at a time) and reset when a Session starts.
+class LatencyTrace {
+	static final LatencyHistogram INGRESS_TO_COMPUTED = new LatencyHistogram();
+	static final LatencyHistogram COMPUTED_TO_FEEDBACK = new LatencyHistogram();
+	static final LatencyHistogram FEEDBACK_TO_AUDIO = new LatencyHistogram();
+	static final LatencyHistogram INGRESS_TO_AUDIO = new LatencyHistogram();
+
+	static volatile AudioEngine AUDIO = null; // audio engine of the running session (set by TriggerSound.init), null without feedback
+
+	private static final String[] STAGES = { "ingress->computed", "computed->feedback", "feedback->audio", "ingress->audio" };
+	private static final LatencyHistogram[] HISTOGRAMS = { INGRESS_TO_COMPUTED, COMPUTED_TO_FEEDBACK, FEEDBACK_TO_AUDIO, INGRESS_TO_AUDIO };
+
+	// start of a session
+	static void reset() {
+		for ( LatencyHistogram H : HISTOGRAMS )
+			H.reset();
+		AUDIO = null;
+	}
+
+	static void writeSummary( File summaryFile ) throws IOException {
+		PrintWriter out = new PrintWriter( new FileWriter( summaryFile ) );
+		try {
+			out.println( "% closed-loop latency per stage, in microseconds" );
+			out.println( "% stage count mean p50 p99 p99.9 max" );
+			for ( int i = 0; i < STAGES.length; ++i ) {
+				LatencyHistogram H = HISTOGRAMS[i];
+				out.println( String.format( Locale.ROOT, "%s %d %.1f %.1f %.1f %.1f %.1f", STAGES[i], H.count(), H.mean() / 1000,
+						H.percentile( 0.5 ) / 1000.0, H.percentile( 0.99 ) / 1000.0, H.percentile( 0.999 ) / 1000.0, H.max() / 1000.0 ) );
+			}
+			if ( AUDIO != null )
+				out.println( "% audio frames " + AUDIO.framesRendered() + " underruns " + AUDIO.underruns() );
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+
+// LINE AUDIO SINK - writes to the audio out jack of the computer through a SourceDataLine, opened once per session.
+class LineAudioSink implements AudioSink {
+	private static final int BYTES_PER_SAMPLE = 2; // 16-bit audio
+	private static final int BITS_PER_SAMPLE = 16; // 16-bit audio
+
+	private SourceDataLine LINE; // to play the sound
+	private boolean written = false;
+
+	public void open( float sampleRate, int bufferFrames ) throws Exception {
+		// sampleRate samples per second, 16-bit audio, mono, signed PCM, little Endian
+		AudioFormat format = new AudioFormat( sampleRate, BITS_PER_SAMPLE, 1, true, false );
+		DataLine.Info info = new DataLine.Info( SourceDataLine.class, format );
+		LINE = (SourceDataLine) AudioSystem.getLine( info );
+		LINE.open( format, bufferFrames * BYTES_PER_SAMPLE ); // acquires the system resources
+		// no sound gets made before this call (clean sound)
+		LINE.start();
+	}
+
+	public boolean starved() {
+		return written && LINE.available() >= LINE.getBufferSize();
+	}
+
+	public long framePosition() {
+		return LINE.getLongFramePosition();
+	}
+
+	public void write( byte[] BUFFER, int offset, int len ) {
+		LINE.write( BUFFER, offset, len );
+		written = true;
+	}
+
+	public void close() {
+		LINE.drain();
+		LINE.stop(); // (prevent audio stream leaking)
+		LINE.close();
+	}
+}
@@ -0,0 +1,46 @@
+import java.util.concurrent.locks.LockSupport;
+
+// NULL AUDIO SINK - discards the samples, but consumes them at the sample rate like a sound card with a buffer of bufferFrames,
+// so that the AudioEngine runs with the same timing (and underrun detection) on machines without audio output.
+class NullAudioSink implements AudioSink {
+	private float sampleRate;
+	private int bufferFrames;
+	private long startNs = 0;
+	private long framesWritten = 0;
+
+	public void open( float sampleRate, int bufferFrames ) throws Exception {
+		this.sampleRate = sampleRate;
+		this.bufferFrames = bufferFrames;
+	}
+
+	// frames played by the emulated device since the first write
+	private long framesPlayed() {
+		return (long) ( ( System.nanoTime() - startNs ) * (double) sampleRate / 1e9 );
+	}
+
+	public boolean starved() {
+		return framesWritten > 0 && framesPlayed() >= framesWritten;
+	}
+
+	public long framePosition() {
+		return framesWritten == 0 ? 0 : Math.min( framesPlayed(), framesWritten );
+	}
+
+	public void write( byte[] BUFFER, int offset, int len ) {
+		if ( framesWritten == 0 )
+			startNs = System.nanoTime();
+		consume( BUFFER, offset, len );
+		framesWritten += len / 2;
+		// block while the emulated device buffer is full
+		long ahead;
+		while ( ( ahead = framesWritten - framesPlayed() - bufferFrames ) > 0 )
+			LockSupport.parkNanos( (long) ( ahead * 1e9 / sampleRate ) );
+	}
+
+	// what is done with the samples (nothing)
+	protected void consume( byte[] BUFFER, int offset, int len ) {
+	}
+
+	public void close() {
+	}
+}
@@ -0,0 +1,122 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// OCCUPANCY GRID - live spatial occupancy of the COM, binned during the session instead of afterwards from sesFile.
+// The arena (polytouch.heatmap.width x polytouch.heatmap.height pixels, 1920 x 1080) is divided in square cells of polytouch.heatmap.cell
+// pixels (20). On every tracked sample (tracking thread) the cell of the COM counts one sample, and the time since the previous sample of
+// the same animal is added as dwell time to the cell where that animal was. Changed cells are flagged in a bit set, so that the GUI only
+// updates those cells of its heatmap texture.
+// At the end of the session the grid is saved as a binary matrix (big-endian, MATLAB: fread(f,1,'int32','ieee-be') ...):
+//   int32 nX, int32 nY, float32 cell size (pixels), int32 samples[nX*nY], float32 dwell time (s)[nX*nY]  (row by row, cell = y*nX + x)
+class OccupancyGrid implements TrackingListener {
+	static final int CELL_SIZE = Integer.getInteger( "polytouch.heatmap.cell", 20 );
+
+	final int nX, nY;
+	private final int[] SAMPLES;
+	private final float[] DWELL; // s
+	private final AtomicLongArray CHANGED; // one bit per cell, set by the tracking thread, cleared by changed()
+
+	// per identity: cell and time of the previous sample (tracking thread only)
+	private int[] LAST_CELL = new int[8];
+	private double[] LAST_TIME = new double[8];
+
+	OccupancyGrid( int width, int height ) {
+		nX = Math.max( 1, ( width + CELL_SIZE - 1 ) / CELL_SIZE );
+		nY = Math.max( 1, ( height + CELL_SIZE - 1 ) / CELL_SIZE );
+		SAMPLES = new int[nX * nY];
+		DWELL = new float[nX * nY];
+		CHANGED = new AtomicLongArray( ( nX * nY + 63 ) >> 6 );
+		Arrays.fill( LAST_CELL, -1 );
+	}
+
+	static OccupancyGrid forSession() {
+		return new OccupancyGrid( Integer.getInteger( "polytouch.heatmap.width", 1920 ), Integer.getInteger( "polytouch.heatmap.height", 1080 ) );
+	}
+
+	// cell of x,y, -1 outside the grid
+	int cell( double x, double y ) {
+		if ( !( x >= 0 && y >= 0 ) ) // also NaN
+			return -1;
+		int ix = (int) ( x / CELL_SIZE );
+		int iy = (int) ( y / CELL_SIZE );
+		return ix < nX && iy < nY ? iy * nX + ix : -1;
+	}
+
+	public void sampleTracked( TrackingSample SAMPLE ) {
+		int id = SAMPLE.identity;
+		if ( id == 0 ) // mouse
+			return;
+		if ( id >= LAST_CELL.length ) {
+			int n = LAST_CELL.length;
+			LAST_CELL = Arrays.copyOf( LAST_CELL, Math.max( id + 1, 2 * n ) );
+			LAST_TIME = Arrays.copyOf( LAST_TIME, LAST_CELL.length );
+			Arrays.fill( LAST_CELL, n, LAST_CELL.length, -1 );
+		}
+		int last = LAST_CELL[id];
+		if ( last >= 0 && SAMPLE.endTime > LAST_TIME[id] ) {
+			DWELL[last] += (float) ( ( SAMPLE.endTime - LAST_TIME[id] ) / 1000000000 );
+			mark( last );
+		}
+		int c = cell( SAMPLE.xCOM, SAMPLE.yCOM );
+		if ( c >= 0 ) {
+			SAMPLES[c]++;
+			mark( c );
+		}
+		LAST_CELL[id] = c;
+		LAST_TIME[id] = SAMPLE.endTime;
+	}
+
+	public void stateChanged( TrackingSample view ) {
+	}
+
+	private void mark( int c ) {
+		int w = c >> 6;
+		long bit = 1L << c;
+		long old = CHANGED.get( w );
+		if ( ( old & bit ) == 0 ) {
+			while ( !CHANGED.compareAndSet( w, old, old | bit ) )
+				old = CHANGED.get( w );
+		}
+	}
+
+	// consumer side: moves the changed cells since the last call into CELLS (length nX*nY), returns their number
+	int changed( int[] CELLS ) {
+		int n = 0;
+		for ( int w = 0; w < CHANGED.length(); ++w ) {
+			long bits = CHANGED.get( w ) != 0 ? CHANGED.getAndSet( w, 0 ) : 0;
+			while ( bits != 0 ) {
+				CELLS[n++] = ( w << 6 ) + Long.numberOfTrailingZeros( bits );
+				bits &= bits - 1;
+			}
+		}
+		return n;
+	}
+
+	int samples( int c ) {
+		return SAMPLES[c];
+	}
+
+	float dwell( int c ) {
+		return DWELL[c];
+	}
+
+	void write( File file ) throws IOException {
+		DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+		try {
+			out.writeInt( nX );
+			out.writeInt( nY );
+			out.writeFloat( CELL_SIZE );
+			for ( int c = 0; c < SAMPLES.length; ++c )
+				out.writeInt( SAMPLES[c] );
+			for ( int c = 0; c < DWELL.length; ++c )
+				out.writeFloat( DWELL[c] );
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,12 @@
+// POINTER EVENT - reusable holder for one pointer event taken from the PointerEventQueue
+class PointerEvent {
+	static final int KIND_XY = 0; // pointerXYEvent
+	static final int KIND_BUTTON = 1; // pointerButtonEvent
+	static final int KIND_POINTER = 2; // pointerEvent (contact lost / out of range)
+
+	public int kind;
+	public int deviceType, pointerID, eventType;
+	public boolean inverted;
+	public int x, y, pressure, buttonIndex;
+	public long ingressNs; // System.nanoTime() at which the pointer callback was received
+}
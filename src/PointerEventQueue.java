@@ -0,0 +1,103 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// POINTER EVENT QUEUE - bounded single-producer/single-consumer queue between the pointer callbacks and the TrackingEngine.
+// Events are stored in preallocated primitive arrays, so enqueueing allocates nothing. The producer never blocks:
+// if the consumer falls behind by a full queue, the event is dropped and counted.
+class PointerEventQueue {
+	private final int MASK;
+	private final int[] kind, deviceType, pointerID, eventType, x, y, pressure, buttonIndex;
+	private final boolean[] inverted;
+	private final long[] ingressNs;
+
+	private final AtomicLong HEAD = new AtomicLong(); // next slot to be read (written by consumer only)
+	private final AtomicLong TAIL = new AtomicLong(); // next slot to be written (written by producer only)
+	private volatile Thread waiter = null; // consumer thread while it is parked
+	private volatile long dropped = 0; // written by producer only
+
+	// capacity is rounded up to a power of two
+	PointerEventQueue( int capacity ) {
+		int size = Integer.highestOneBit( Math.max( 2, capacity - 1 ) ) << 1;
+		MASK = size - 1;
+		kind = new int[size];
+		deviceType = new int[size];
+		pointerID = new int[size];
+		eventType = new int[size];
+		x = new int[size];
+		y = new int[size];
+		pressure = new int[size];
+		buttonIndex = new int[size];
+		inverted = new boolean[size];
+		ingressNs = new long[size];
+	}
+
+	// producer side; returns false if the queue is full and the event was dropped
+	public boolean offer( int kind, int deviceType, int pointerID, int eventType, boolean inverted, int x, int y, int pressure, int buttonIndex, long ingressNs ) {
+		long t = TAIL.get();
+		if ( t - HEAD.get() > MASK ) {
+			dropped++;
+			return false;
+		}
+		int i = (int) (t & MASK);
+		this.kind[i] = kind;
+		this.deviceType[i] = deviceType;
+		this.pointerID[i] = pointerID;
+		this.eventType[i] = eventType;
+		this.inverted[i] = inverted;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.pressure[i] = pressure;
+		this.buttonIndex[i] = buttonIndex;
+		this.ingressNs[i] = ingressNs;
+		TAIL.set( t + 1 ); // publishes the slot contents; volatile store so that the waiter check below cannot miss a parked consumer
+
+		Thread w = waiter;
+		if ( w != null )
+			LockSupport.unpark( w );
+		return true;
+	}
+
+	// consumer side; copies the oldest event into EVENT, returns false if the queue is empty
+	public boolean poll( PointerEvent EVENT ) {
+		long h = HEAD.get();
+		if ( h >= TAIL.get() )
+			return false;
+		int i = (int) (h & MASK);
+		EVENT.kind = kind[i];
+		EVENT.deviceType = deviceType[i];
+		EVENT.pointerID = pointerID[i];
+		EVENT.eventType = eventType[i];
+		EVENT.inverted = inverted[i];
+		EVENT.x = x[i];
+		EVENT.y = y[i];
+		EVENT.pressure = pressure[i];
+		EVENT.buttonIndex = buttonIndex[i];
+		EVENT.ingressNs = ingressNs[i];
+		HEAD.lazySet( h + 1 ); // releases the slot to the producer
+		return true;
+	}
+
+	// consumer side; parks until an event is offered, the timeout elapses or the consumer is unparked
+	public void await( long timeoutNs ) {
+		waiter = Thread.currentThread();
+		if ( isEmpty() )
+			LockSupport.parkNanos( this, timeoutNs );
+		waiter = null;
+	}
+
+	public boolean isFull() {
+		return TAIL.get() - HEAD.get() > MASK;
+	}
+
+	public boolean isEmpty() {
+		return HEAD.get() >= TAIL.get();
+	}
+
+	public int size() {
+		return (int) (TAIL.get() - HEAD.get());
+	}
+
+	public long dropped() {
+		return dropped;
+	}
+}
@@ -0,0 +1,19 @@
+import jwinpointer.JWinPointerReader.PointerEventListener;
+
+// POINTER INPUT SOURCE - delivers pointer events to PointerEventListeners, in the coordinate system of the tracking arena (GUI).
+// Implementations: JWinPointerInputSource (touch frame, Windows only), ReplayInputSource (recorded sesFile),
+// SyntheticInputSource (generated trajectory), so that tracking and feedback can run without touch hardware.
+interface PointerInputSource {
+	void addPointerEventListener( PointerEventListener listener );
+
+	void removePointerEventListener( PointerEventListener listener );
+
+	// start delivering events (sources with their own thread start it here)
+	void start();
+
+	// stop delivering events
+	void stop();
+
+	// true if the source has no more events to deliver (never true for live input)
+	boolean isFinished();
+}
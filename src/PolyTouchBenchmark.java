@@ -0,0 +1,273 @@
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/** POLYTOUCH BENCHMARK - micro-benchmarks of the tracking and feedback hot paths.
+ *
+ *  The benchmarks run in the default package next to the classes they measure, with JMH-style warm-up and measurement
+ *  iterations. Besides the time per operation, every benchmark reports the bytes allocated per operation and the allocation
+ *  rate of the benchmark thread (the numbers of JMH's gc profiler) plus the number of collections during measurement.
+ *
+ *  Run:
+ *    java -cp PolyTouch.jar PolyTouchBenchmark [name filter]
+ *  Options: -Dbench.warmup=3 -Dbench.iterations=5 -Dbench.time=1000 (ms per iteration)
+ */
+public class PolyTouchBenchmark {
+	private static final int WARMUP = Integer.getInteger( "bench.warmup", 3 );
+	private static final int ITERATIONS = Integer.getInteger( "bench.iterations", 5 );
+	private static final long ITERATION_NS = Long.getLong( "bench.time", 1000 ) * 1000000;
+	private static final int[] CONTACTS = { 1, 4, 16, 64 };
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// result sink, prevents the JIT from removing benchmark code
+	static volatile long BLACKHOLE;
+
+	// one benchmark operation; returns a value that is consumed by the blackhole
+	static abstract class Benchmark {
+		final String name;
+		final String param;
+
+		Benchmark( String name, String param ) {
+			this.name = name;
+			this.param = param;
+		}
+
+		void setup() throws Exception {
+		}
+
+		abstract long op();
+
+		void tearDown() {
+		}
+	}
+
+	public static void main( String[] args ) throws Exception {
+		String filter = args.length > 0 ? args[0] : "";
+		ArrayList< Benchmark > BENCHMARKS = new ArrayList< Benchmark >();
+		for ( int n : CONTACTS ) {
+			BENCHMARKS.add( touchUpdate( n ) );
+			BENCHMARKS.add( touchChurn( n ) );
+			BENCHMARKS.add( kinematics( n ) );
+		}
+		BENCHMARKS.add( encodeSample() );
+		BENCHMARKS.add( encodeAndWriteSample() );
+		BENCHMARKS.add( stateLogRepeated() );
+		BENCHMARKS.add( stateLogChanging() );
+		BENCHMARKS.add( oscillator() );
+		BENCHMARKS.add( play() );
+
+		System.out.println( String.format( "%-28s %6s %14s %14s %12s %12s %6s", "Benchmark", "param", "ns/op", "ops/s", "B/op", "alloc MB/s", "gc" ) );
+		for ( Benchmark BENCHMARK : BENCHMARKS ) {
+			if ( BENCHMARK.name.contains( filter ) )
+				run( BENCHMARK );
+		}
+		System.exit( 0 );
+	}
+
+	private static void run( Benchmark BENCHMARK ) throws Exception {
+		try {
+			BENCHMARK.setup();
+		} catch ( Exception e ) {
+			System.out.println( String.format( "%-28s %6s skipped: %s", BENCHMARK.name, BENCHMARK.param, e.getMessage() ) );
+			return;
+		}
+		for ( int i = 0; i < WARMUP; ++i )
+			iteration( BENCHMARK, null );
+		double[] RESULT = new double[4]; // ns, ops, bytes, gc count
+		for ( int i = 0; i < ITERATIONS; ++i )
+			iteration( BENCHMARK, RESULT );
+		BENCHMARK.tearDown();
+
+		double nsPerOp = RESULT[0] / RESULT[1];
+		System.out.println( String.format( "%-28s %6s %14.1f %14.0f %12.1f %12.1f %6.0f", BENCHMARK.name, BENCHMARK.param,
+				nsPerOp, 1e9 / nsPerOp, RESULT[2] / RESULT[1], RESULT[2] / ( RESULT[0] / 1e9 ) / ( 1024 * 1024 ), RESULT[3] ) );
+	}
+
+	private static void iteration( Benchmark BENCHMARK, double[] RESULT ) {
+		long threadId = Thread.currentThread().getId();
+		long gc0 = gcCount();
+		long bytes0 = THREADS.getThreadAllocatedBytes( threadId );
+		long t0 = System.nanoTime();
+		long ops = 0; long t; long sum = 0;
+		do {
+			for ( int i = 0; i < 64; ++i )
+				sum += BENCHMARK.op();
+			ops += 64;
+		} while ( ( t = System.nanoTime() ) - t0 < ITERATION_NS );
+		long bytes = THREADS.getThreadAllocatedBytes( threadId ) - bytes0;
+		BLACKHOLE = sum;
+		if ( RESULT != null ) {
+			RESULT[0] += t - t0;
+			RESULT[1] += ops;
+			RESULT[2] += bytes;
+			RESULT[3] += gcCount() - gc0;
+		}
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for ( GarbageCollectorMXBean GC : ManagementFactory.getGarbageCollectorMXBeans() )
+			count += Math.max( 0, GC.getCollectionCount() );
+		return count;
+	}
+
+	// --- TouchInfoArray: move all n contacts (one updatePointer per contact) ---
+	private static Benchmark touchUpdate( final int n ) {
+		return new Benchmark( "TouchInfoArray.update", "" + n ) {
+			TouchInfoArray TOUCHARRAY = new TouchInfoArray();
+			int frame = 0;
+
+			long op() {
+				frame++;
+				for ( int id = 0; id < n; ++id )
+					TOUCHARRAY.updatePointer( 2, 2 + id, false, frame & 1023, id, 100 );
+				return TOUCHARRAY.size();
+			}
+		};
+	}
+
+	// --- TouchInfoArray: one contact lost and a new one detected per operation, n contacts present ---
+	private static Benchmark touchChurn( final int n ) {
+		return new Benchmark( "TouchInfoArray.churn", "" + n ) {
+			TouchInfoArray TOUCHARRAY = new TouchInfoArray();
+			int next = 0;
+
+			void setup() {
+				for ( next = 0; next < n; ++next )
+					TOUCHARRAY.updatePointer( 2, 2 + next, false, next, next, 100 );
+			}
+
+			long op() {
+				TOUCHARRAY.removePointer( 2, 2 + next - n );
+				TOUCHARRAY.updatePointer( 2, 2 + next, false, next & 1023, next & 511, 100 );
+				next++;
+				return TOUCHARRAY.size();
+			}
+		};
+	}
+
+	// --- one frame of the engine with n contacts: every contact moves (TouchInfoArray.updatePointer, as TrackingEngine.process), then
+	// the COM of the frame advances the kinematics once (TrackingEngine.step, as TrackingEngine.advance) ---
+	private static Benchmark kinematics( final int n ) {
+		return new Benchmark( "TrackingEngine.advance", "" + n ) {
+			TouchInfoArray TOUCHARRAY = new TouchInfoArray();
+			Kinematics KINEMATICS = new Kinematics( 400, 300, 0.0273 );
+			long t = 0;
+
+			long op() {
+				t += 1000000;
+				for ( int id = 0; id < n; ++id )
+					TOUCHARRAY.updatePointer( 2, 2 + id, false, 400 + (int) ( t >> 20 & 255 ) + id, 300 + id, 100 );
+				TrackingEngine.step( TOUCHARRAY, KINEMATICS, t );
+				return (long) KINEMATICS.relDist;
+			}
+		};
+	}
+
+	// --- sesFile line encoding (12 columns) ---
+	private static Benchmark encodeSample() {
+		return new Benchmark( "SampleEncoder.encode", "" ) {
+			SampleEncoder ENCODER = new SampleEncoder();
+			int i = 0;
+
+			long op() {
+				i++;
+				ENCODER.reset().putInt(400 + (i & 255)).putInt(300).putDouble(401.25 + i).putDouble(299.75).putDouble(123.456789)
+						.putInt(120).putInt(5).putInt(1).putDouble(1234.567891).putDouble(12.3456).putDouble(4.56789).putDouble(1.0e9 + i).endLine();
+				return ENCODER.length();
+			}
+		};
+	}
+
+	// --- sesFile line encoding and hand-off to the asynchronous session log ---
+	private static Benchmark encodeAndWriteSample() {
+		return new Benchmark( "SessionLogWriter.append", "" ) {
+			SampleEncoder ENCODER = new SampleEncoder();
+			SessionLogWriter SESLOG;
+			File file;
+			int i = 0;
+
+			void setup() throws Exception {
+				file = File.createTempFile( "polytouch-bench", ".txt" );
+				file.deleteOnExit();
+				SESLOG = SessionLogWriter.open( file );
+			}
+
+			long op() {
+				i++;
+				ENCODER.reset().putInt(400 + (i & 255)).putInt(300).putDouble(401.25 + i).putDouble(299.75).putDouble(123.456789)
+						.putInt(120).putInt(5).putInt(1).putDouble(1234.567891).putDouble(12.3456).putDouble(4.56789).putDouble(1.0e9 + i).endLine();
+				SESLOG.append( ENCODER.buffer(), 0, ENCODER.length() );
+				return ENCODER.length();
+			}
+
+			void tearDown() {
+				SESLOG.close();
+				file.delete();
+			}
+		};
+	}
+
+	// --- TouchStateLog: same behavioural state reported again (counter increment) ---
+	private static Benchmark stateLogRepeated() {
+		return new Benchmark( "TouchStateLog.log", "same" ) {
+			TouchStateLog LOGGER = new TouchStateLog();
+
+			long op() {
+				LOGGER.log( "time: 1 s - walked: 2 cm - speed: 3 cm/s - dist to T: 4cm - Moving" );
+				return 1;
+			}
+		};
+	}
+
+	// --- TouchStateLog: a new message per event (as produced by the tracking engine while the animal moves) ---
+	private static Benchmark stateLogChanging() {
+		return new Benchmark( "TouchStateLog.log", "new" ) {
+			TouchStateLog LOGGER = new TouchStateLog();
+			String[] MESSAGES = new String[64];
+
+			void setup() {
+				for ( int i = 0; i < MESSAGES.length; ++i )
+					MESSAGES[i] = "time: " + i + " s - walked: 2 cm - speed: 3 cm/s - dist to T: 4cm - Moving";
+			}
+
+			long op() {
+				LOGGER.log( MESSAGES[(int) ( System.nanoTime() & 63 )] );
+				return 1;
+			}
+		};
+	}
+
+	// --- WavetableOscillator.render of one tone of toneDur (1 s at toneFs), in chunks of the TriggerSound buffer ---
+	private static Benchmark oscillator() {
+		return new Benchmark( "WavetableOscillator.render", "1s" ) {
+			WavetableOscillator OSCILLATOR = new WavetableOscillator( 14400, 1 );
+			byte[] BUFFER = new byte[4096 * 2 / 3];
+			int frame = 0;
+
+			long op() {
+				OSCILLATOR.setFrequency( ( ++frame & 1 ) == 0 ? 450 : 760 );
+				long bytes = 0;
+				for ( int nSamples = 14401; nSamples > 0; nSamples -= BUFFER.length / 2 )
+					bytes += OSCILLATOR.render( BUFFER, 0, Math.min( nSamples, BUFFER.length / 2 ) );
+				return bytes;
+			}
+		};
+	}
+
+	// --- AudioEngine.render of one chunk, with a new gain and frequency target every 8 chunks (ramp and phase-continuous switch) ---
+	private static Benchmark play() {
+		return new Benchmark( "AudioEngine.render", "" + AudioEngine.CHUNK_FRAMES ) {
+			AudioEngine AUDIO = new AudioEngine( new NullAudioSink(), 14400, 1 );
+			int chunk = 0;
+
+			long op() {
+				if ( ( ++chunk & 7 ) == 0 )
+					AUDIO.set( ( chunk & 8 ) == 0 ? 0.6f : 0.8f, ( chunk & 16 ) == 0 ? 450 : 760, null );
+				return AUDIO.render();
+			}
+		};
+	}
+}
@@ -25,6 +25,7 @@
 % - sessionFile.track.elapDistTot - total elapsed distance, in cm
 % - sessionFile.head.angle - heading angle, in degrees
 % - sessionFile.head.speed - heading speed, in cm/sec
+% - sessionFile.track.identity - identity of the animal
 % - sessionFile.toneAmp - amplitude of feedback tone
 % - sessionFile.toneFreq - frequency of feedback tone
 % - sessionFile.toneDur - duration of feedback tone
@@ -218,6 +219,7 @@ sessionFile.track.eventType = []; % behavioral state (mobile, immobile)
 sessionFile.track.elapDistTot = []; % total elapsed distance, in cm
 sessionFile.head.angle = []; % heading angle, in degrees
 sessionFile.head.speed = []; % heading speed, in cm/sec
+sessionFile.track.identity = []; % identity of the animal
 sessionFile.toneAmp = toneAmp; % amplitude of feedback tone
 sessionFile.toneFreq = toneFreq; % frequency of feedback tone
 sessionFile.toneDur = toneDur; % duration of feedback tone
@@ -253,7 +255,7 @@ delimiterJ = ' ';
 fileIDJ = fopen(filenameJ,'r');
 tempSpecJ = '%f';
 
-numVars = 12; % specify number of output variables sesFileJ - {x, y, xCOM, yCOM,relHead,pressure,pointerID,eventType,elapDistTot,bodySpeed,relDist,endTime};
+numVars = 13; % specify number of output variables sesFileJ - {x, y, xCOM, yCOM,relHead,pressure,pointerID,eventType,elapDistTot,bodySpeed,relDist,endTime,identity};
 formatSpecJ = strcat(repmat([tempSpecJ],1,numVars),'%[^\n\r]');
 dataArray = textscan(fileIDJ, formatSpecJ, 'Delimiter', delimiterJ, 'MultipleDelimsAsOne', true, 'EmptyValue' ,NaN, 'ReturnOnError', false);
 fclose(fileIDJ);
@@ -271,6 +273,7 @@ sessionFile.track.eventType = dataArray{:,8}; % behavioral state
 sessionFile.track.elapDistTot = dataArray{:,9}; % total elapsed distance, in cm
 sessionFile.head.angle = dataArray{:,5}; % heading angle, in degrees
 sessionFile.head.speed = dataArray{:,10}; % heading speed, in cm/sec
+sessionFile.track.identity = dataArray{:,13}; % identity of the animal
 sessionFile.toneAmp = toneAmp; % amplitude of feedback tone
 sessionFile.toneFreq = toneFreq; % frequency of feedback tone
 sessionFile.toneDur = toneDur; % duration of feedback tone
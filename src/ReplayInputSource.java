@@ -0,0 +1,77 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// REPLAY INPUT SOURCE - re-emits the contact points of a recorded session file (sesFile_A?P?S?.txt).
+// speed 1 replays in real time, N replays N times faster, 0 replays as fast as possible.
+// sesFile does not record lost contacts, a contact that has not been seen for STALE_NS (recorded time) is released with an UP event.
+// sesFile does not record the device type either; pointerID 1 is the mouse, all other contacts are replayed as touch.
+class ReplayInputSource extends ThreadedInputSource {
+	private static final long STALE_NS = 250000000L;
+
+	private final File sesFile;
+	private final double speed;
+
+	ReplayInputSource( File sesFile, double speed ) {
+		super( "replay" );
+		this.sesFile = sesFile;
+		this.speed = speed;
+	}
+
+	protected void generate() throws Exception {
+		HashMap< Integer, Long > LASTSEEN = new HashMap< Integer, Long >(); // pointerID -> recorded time last seen
+		BufferedReader in = new BufferedReader( new FileReader( sesFile ) );
+		try {
+			String line;
+			long t0 = -1;
+			long wall0 = 0;
+			long lastT = 0;
+			while ( running() && ( line = in.readLine() ) != null ) {
+				// columns: x y xCOM yCOM relHead pressure pointerID eventType elapDistTot bodySpeed relDist endTime (identity)
+				String[] splitLine = line.trim().split( " +" );
+				if ( splitLine.length < 12 )
+					continue;
+				int x = (int) Double.parseDouble( splitLine[0] );
+				int y = (int) Double.parseDouble( splitLine[1] );
+				int pressure = (int) Double.parseDouble( splitLine[5] );
+				int pointerID = (int) Double.parseDouble( splitLine[6] );
+				int eventType = (int) Double.parseDouble( splitLine[7] );
+				long t = (long) Double.parseDouble( splitLine[11] );
+				if ( eventType == 0 ) // immobile samples were logged with eventType 0
+					eventType = EVENT_TYPE_DRAG;
+
+				if ( t0 < 0 ) {
+					t0 = t;
+					wall0 = System.nanoTime();
+				}
+				if ( speed > 0 )
+					waitUntil( wall0 + (long) ( ( t - t0 ) / speed ) );
+
+				// release contacts that are no longer recorded
+				for ( Iterator< Map.Entry< Integer, Long > > it = LASTSEEN.entrySet().iterator(); it.hasNext(); ) {
+					Map.Entry< Integer, Long > CONTACT = it.next();
+					if ( t - CONTACT.getValue() > STALE_NS && CONTACT.getKey() != pointerID ) {
+						emitPointer( deviceType( CONTACT.getKey() ), CONTACT.getKey(), EVENT_TYPE_UP );
+						it.remove();
+					}
+				}
+				LASTSEEN.put( pointerID, t );
+				emitXY( deviceType( pointerID ), pointerID, eventType, x, y, pressure );
+				lastT = t;
+			}
+			System.out.println( "Replayed " + ( lastT - Math.max( t0, 0 ) ) / 1000000 + " ms of " + sesFile.getName() );
+		} finally {
+			in.close();
+		}
+		for ( Integer pointerID : LASTSEEN.keySet() )
+			emitPointer( deviceType( pointerID ), pointerID, EVENT_TYPE_UP );
+	}
+
+	// recorded mouse samples (pointerID 1) are replayed as mouse, not as another touch contact
+	private static int deviceType( int pointerID ) {
+		return pointerID == 1 ? DEVICE_TYPE_MOUSE : DEVICE_TYPE_TOUCH;
+	}
+}
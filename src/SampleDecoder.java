@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// SAMPLE DECODER - parses output lines (space or tab separated numbers, as written by SampleEncoder or by older versions with
+// Arrays.toString/Double.toString, e.g. 1.0E9) into a reusable double[] without creating objects per line, for tools that read many
+// session files. Numbers with more than 18 significant digits are handed to Double.parseDouble; the fast path can differ from it
+// in the last bit, which does not matter for summaries. A token that is not a number is read as NaN.
+class SampleDecoder {
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for ( int i = 1; i < POW10.length; ++i )
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final InputStream in;
+	private final byte[] BUFFER = new byte[1 << 16];
+	private int position = 0, limit = 0;
+	private final byte[] TOKEN = new byte[64];
+
+	SampleDecoder( InputStream in ) {
+		this.in = in;
+	}
+
+	// parse the next non-empty line into ROW (columns beyond ROW.length are skipped), returns its number of columns or -1 at the end
+	int next( double[] ROW ) throws IOException {
+		int columns = 0;
+		int b;
+		while ( ( b = read() ) != -1 ) {
+			if ( b == '\n' ) {
+				if ( columns > 0 )
+					return columns;
+			} else if ( b != ' ' && b != '\t' && b != '\r' && b != ',' ) {
+				int n = 0;
+				do {
+					if ( n < TOKEN.length )
+						TOKEN[n++] = (byte) b;
+					b = read();
+				} while ( b != -1 && b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != ',' );
+				if ( columns < ROW.length )
+					ROW[columns] = parse( TOKEN, n );
+				columns++;
+				if ( b == '\n' || b == -1 )
+					return columns;
+			}
+		}
+		return columns > 0 ? columns : -1;
+	}
+
+	private int read() throws IOException {
+		if ( position == limit ) {
+			limit = in.read( BUFFER, 0, BUFFER.length );
+			position = 0;
+			if ( limit <= 0 ) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return BUFFER[position++];
+	}
+
+	static double parse( byte[] T, int n ) {
+		int i = 0;
+		boolean negative = false;
+		if ( i < n && ( T[i] == '-' || T[i] == '+' ) )
+			negative = T[i++] == '-';
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean any = false;
+		for ( ; i < n && T[i] >= '0' && T[i] <= '9'; ++i ) {
+			any = true;
+			if ( mantissa != 0 || T[i] != '0' )
+				digits++;
+			if ( digits <= 18 )
+				mantissa = mantissa * 10 + ( T[i] - '0' );
+		}
+		if ( i < n && T[i] == '.' ) {
+			for ( ++i; i < n && T[i] >= '0' && T[i] <= '9'; ++i ) {
+				any = true;
+				if ( mantissa != 0 || T[i] != '0' )
+					digits++;
+				if ( digits <= 18 ) {
+					mantissa = mantissa * 10 + ( T[i] - '0' );
+					exponent--;
+				}
+			}
+		}
+		if ( any && i < n && ( T[i] == 'E' || T[i] == 'e' ) ) {
+			int j = i + 1;
+			boolean negativeExponent = false;
+			if ( j < n && ( T[j] == '-' || T[j] == '+' ) )
+				negativeExponent = T[j++] == '-';
+			int e = 0;
+			boolean anyExponent = false;
+			for ( ; j < n && T[j] >= '0' && T[j] <= '9'; ++j ) {
+				anyExponent = true;
+				e = Math.min( e * 10 + ( T[j] - '0' ), 100000 );
+			}
+			if ( anyExponent ) {
+				exponent += negativeExponent ? -e : e;
+				i = j;
+			}
+		}
+		if ( !any || i != n || digits > 18 )
+			return slow( T, n );
+		double value = mantissa;
+		if ( exponent < 0 && -exponent < POW10.length )
+			value /= POW10[-exponent];
+		else if ( exponent > 0 && exponent < POW10.length )
+			value *= POW10[exponent];
+		else if ( exponent != 0 )
+			return slow( T, n );
+		return negative ? -value : value;
+	}
+
+	private static double slow( byte[] T, int n ) {
+		try {
+			return Double.parseDouble( new String( T, 0, n, StandardCharsets.US_ASCII ) );
+		} catch ( NumberFormatException e ) {
+			return Double.NaN;
+		}
+	}
+}
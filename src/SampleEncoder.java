@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+// SAMPLE ENCODER - formats one output line (space separated columns, platform line terminator) into a reusable byte buffer.
+// Replaces Arrays.toString() + replace(): the column layout read by PolyTouch_startWrap.m stays the same, but numbers are
+// written digit by digit so that no garbage is created per logged sample once the buffer has reached its working size.
+//
+// Doubles are written in plain decimal notation with up to MAX_DECIMALS fractional digits (trailing zeros removed, at least
+// one fractional digit as with Double.toString), NaN and Infinity are written as "NaN" and "Infinity".
+class SampleEncoder {
+	private static final int MAX_DECIMALS = 6;
+	private static final double EXACT_LIMIT = 9007199254740992.0; // 2^53, largest range in which doubles hold every integer
+	private static final long[] POW10 = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L };
+	private static final byte[] NAN = { 'N', 'a', 'N' };
+	private static final byte[] INFINITY = { 'I', 'n', 'f', 'i', 'n', 'i', 't', 'y' };
+	private static final byte[] LONG_MIN = Long.toString( Long.MIN_VALUE ).getBytes();
+
+	private byte[] BUFFER = new byte[256];
+	private int length = 0;
+	private boolean newLine = true; // no column separator in front of the first column
+
+	// start a new line (the previous content is discarded)
+	public SampleEncoder reset() {
+		length = 0;
+		newLine = true;
+		return this;
+	}
+
+	public byte[] buffer() {
+		return BUFFER;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public SampleEncoder putInt( int value ) {
+		return putLong( value );
+	}
+
+	public SampleEncoder putLong( long value ) {
+		separator();
+		if ( value == Long.MIN_VALUE ) {
+			putBytes( LONG_MIN );
+			return this;
+		}
+		if ( value < 0 ) {
+			putByte( '-' );
+			value = -value;
+		}
+		putDigits( value, 1 );
+		return this;
+	}
+
+	public SampleEncoder putDouble( double value ) {
+		separator();
+		if ( Double.isNaN( value ) ) {
+			putBytes( NAN );
+			return this;
+		}
+		if ( value < 0 ) {
+			putByte( '-' );
+			value = -value;
+		}
+		if ( Double.isInfinite( value ) ) {
+			putBytes( INFINITY );
+			return this;
+		}
+		if ( value >= EXACT_LIMIT ) {
+			putScientific( value );
+			return this;
+		}
+
+		// use as many fractional digits as the double can represent exactly after scaling
+		int decimals = MAX_DECIMALS;
+		while ( decimals > 0 && value * POW10[decimals] >= EXACT_LIMIT )
+			decimals--;
+		long scaled = Math.round( value * POW10[decimals] );
+		long intPart = scaled / POW10[decimals];
+		long fracPart = scaled % POW10[decimals];
+		putDigits( intPart, 1 );
+		putByte( '.' );
+		if ( fracPart == 0 ) {
+			putByte( '0' );
+		} else {
+			// drop trailing zeros, keep leading zeros
+			while ( fracPart % 10 == 0 ) {
+				fracPart /= 10;
+				decimals--;
+			}
+			putDigits( fracPart, decimals );
+		}
+		return this;
+	}
+
+	// terminate the current line; the encoded line is buffer()[0, length())
+	public SampleEncoder endLine() {
+		putBytes( SessionLogWriter.NEWLINE );
+		newLine = true;
+		return this;
+	}
+
+	// values beyond 2^53 (never produced by the tracking module, but the encoder must not fail on them)
+	private void putScientific( double value ) {
+		int exponent = (int) Math.floor( Math.log10( value ) );
+		double mantissa = value / Math.pow( 10, exponent );
+		long scaled = Math.round( mantissa * POW10[MAX_DECIMALS] );
+		if ( scaled >= 10 * POW10[MAX_DECIMALS] ) { // rounding carried into the next power of ten
+			scaled /= 10;
+			exponent++;
+		}
+		putDigits( scaled / POW10[MAX_DECIMALS], 1 );
+		putByte( '.' );
+		putDigits( scaled % POW10[MAX_DECIMALS], MAX_DECIMALS );
+		putByte( 'E' );
+		putDigits( exponent, 1 );
+	}
+
+	// write non-negative value with at least minDigits digits (zero padded)
+	private void putDigits( long value, int minDigits ) {
+		int nDigits = 1;
+		for ( long v = value / 10; v > 0; v /= 10 )
+			nDigits++;
+		if ( nDigits < minDigits )
+			nDigits = minDigits;
+		ensureCapacity( nDigits );
+		for ( int i = length + nDigits - 1; i >= length; --i ) {
+			BUFFER[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		length += nDigits;
+	}
+
+	private void separator() {
+		if ( !newLine )
+			putByte( ' ' );
+		newLine = false;
+	}
+
+	private void putByte( int b ) {
+		ensureCapacity( 1 );
+		BUFFER[length++] = (byte) b;
+	}
+
+	private void putBytes( byte[] bytes ) {
+		ensureCapacity( bytes.length );
+		System.arraycopy( bytes, 0, BUFFER, length, bytes.length );
+		length += bytes.length;
+	}
+
+	private void ensureCapacity( int extra ) {
+		if ( length + extra > BUFFER.length )
+			BUFFER = Arrays.copyOf( BUFFER, Math.max( 2 * BUFFER.length, length + extra ) );
+	}
+}
@@ -0,0 +1,108 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+
+// SAMPLE RING - layout of the shared-memory ring (sesRing_A?P?S?.bin), shared by SampleRingWriter and SampleRingReader.
+// One writer (the session) publishes every tracked sample and every feedback trigger and stimulus onset into a memory-mapped file of
+// fixed-width records; any number of local readers (other JVMs, MATLAB through the Java reader) map the same file and tail it.
+// All numbers are little-endian. The file starts with a header of HEADER_SIZE bytes:
+//   0  8 bytes  magic "PTRING01"
+//   8  int32    header size (bytes, records start here)
+//  12  int32    record size (bytes)
+//  16  int32    capacity (records, a power of 2)
+//  20  int32    values per record
+//  24  int64    epoch: set when the writer (re)initialises the ring, 0 while it does; readers that see it change start over
+//  32  int64    wall clock at session time 0 (us since 1970, 0 before the session has started, see SessionClock)
+//  40  int32    closed: 1 when the writer has closed the ring (end of the session)
+//  64  int64    published: number of records written so far (on a cache line of its own)
+// followed by capacity records; record n is stored in slot n % capacity:
+//   0  int64    sequence number n of the record in the slot (-1 while the slot is written)
+//   8  int32    kind (SAMPLE, FEEDBACK, STIMULUS)
+//  12  int32    identity (animal of a sample, 0 otherwise)
+//  16  float64  time (session time in ns)
+//  24  VALUES x float64, by kind:
+//               SAMPLE    x, y, xCOM, yCOM, relHead, pressure, pointerID, eventType, elapDistTot, bodySpeed, relDist (as sesFile)
+//               FEEDBACK  gain (-1 = silence), frequency (Hz), relDist of the sample that triggered it
+//               STIMULUS  stimulus (1..9), intRand, gain, scheduled onset (ns), actual onset (ns)
+// Publication (seqlock per slot): the writer marks the slot with sequence -1, writes the fields, writes the sequence n and then
+// published = n + 1. A reader of record n reads published, the sequence, the fields and the sequence again; the record is valid if both
+// reads of the sequence are n. If the writer has lapped the reader (published - n > capacity, or another sequence in the slot) the
+// records in between are lost, which the reader counts.
+class SampleRing {
+	static final byte[] MAGIC = "PTRING01".getBytes( StandardCharsets.US_ASCII );
+	static final int HEADER_SIZE = 128;
+	static final int RECORD_SIZE = 128;
+	static final int VALUES = 13;
+	static final int MAX_CAPACITY = 1 << 23; // 1 GB of records, the file is mapped at once
+
+	// header fields
+	static final int HEADER_SIZE_OFFSET = 8;
+	static final int RECORD_SIZE_OFFSET = 12;
+	static final int CAPACITY_OFFSET = 16;
+	static final int VALUES_COUNT_OFFSET = 20;
+	static final int EPOCH_OFFSET = 24;
+	static final int WALL_CLOCK_OFFSET = 32;
+	static final int CLOSED_OFFSET = 40;
+	static final int PUBLISHED_OFFSET = 64;
+
+	// record fields
+	static final int SEQUENCE = 0;
+	static final int KIND = 8;
+	static final int IDENTITY = 12;
+	static final int TIME = 16;
+	static final int VALUES_OFFSET = 24;
+
+	// kinds of records
+	static final int SAMPLE = 1;
+	static final int FEEDBACK = 2;
+	static final int STIMULUS = 3;
+
+	// values used by the records of a kind
+	static int values( int kind ) {
+		return kind == SAMPLE ? 11 : kind == FEEDBACK ? 3 : kind == STIMULUS ? 5 : 0;
+	}
+
+	// Order of the accesses to the mapping: plain puts and gets of a MappedByteBuffer may be reordered by the JIT and the CPU, so the writer
+	// separates the sequence numbers from the fields with StoreStore fences and the reader with LoadLoad fences. The fences are those of
+	// VarHandle (Java 9+) or, on Java 8, of sun.misc.Unsafe; both are looked up reflectively so that the sources compile on Java 8 without
+	// warnings about internal API. The method handles are constants, the JIT compiles a call to the fence instruction (none on x86).
+	private static final MethodHandle STORE_FENCE = fence( "storeStoreFence", "storeFence" );
+	private static final MethodHandle LOAD_FENCE = fence( "loadLoadFence", "loadFence" );
+
+	private static MethodHandle fence( String varHandleFence, String unsafeFence ) {
+		MethodType VOID = MethodType.methodType( void.class );
+		try {
+			return MethodHandles.publicLookup().findStatic( Class.forName( "java.lang.invoke.VarHandle" ), varHandleFence, VOID );
+		} catch ( ReflectiveOperationException e ) {
+			// Java 8
+		}
+		try {
+			Class< ? > UNSAFE = Class.forName( "sun.misc.Unsafe" );
+			Field THE_UNSAFE = UNSAFE.getDeclaredField( "theUnsafe" );
+			THE_UNSAFE.setAccessible( true );
+			return MethodHandles.publicLookup().findVirtual( UNSAFE, unsafeFence, VOID ).bindTo( THE_UNSAFE.get( null ) );
+		} catch ( ReflectiveOperationException e ) {
+			throw new IllegalStateException( "No memory fence available: " + e );
+		}
+	}
+
+	// stores before are done before the stores after (writer)
+	static void storeFence() {
+		try {
+			STORE_FENCE.invokeExact();
+		} catch ( Throwable e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+
+	// loads after are not done before the loads before (reader)
+	static void loadFence() {
+		try {
+			LOAD_FENCE.invokeExact();
+		} catch ( Throwable e ) {
+			throw new IllegalStateException( e );
+		}
+	}
+}
@@ -0,0 +1,342 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/** SAMPLE RING READER - tails the shared-memory ring of a running session (layout: SampleRing) through a read-only memory mapping.
+ *  Records are read in order of their sequence number straight from the mapping (no system call, no copy besides the fields of the
+ *  current record); next() returns false when the reader has caught up with the writer, so a consumer polls it. A reader that falls
+ *  behind by more than the capacity of the ring skips to the oldest record still in the ring and counts the records it has missed
+ *  (lost()). When the writer initialises the ring again (next session with the same polytouch.ring.file) the reader starts over at
+ *  record 0 of the new epoch. Any number of readers can tail the same ring. A reader is used by one thread.
+ *  Java:   r = SampleRingReader.open( file ); while ( !r.isClosed() ) { while ( r.next() ) use( r.kind(), r.time(), r.value( 2 ) ); sleep }
+ *  MATLAB: r = SampleRingReader.open(java.io.File('sesRing_A1P1S2.bin')); d = reshape(r.read(10000), SampleRingReader.ROW, [])';
+ *
+ *  Text output of a ring until the session ends:  java -cp PolyTouch.jar SampleRingReader sesRing_A1P1S2.bin
+ *  Loopback check (writer and reader in one JVM):  java -cp PolyTouch.jar SampleRingReader -loopback [samplesPerSecond [seconds]]
+ */
+public class SampleRingReader {
+	// columns of a row of read(): sequence, kind, identity, time (ns), values
+	public static final int ROW = 4 + SampleRing.VALUES;
+
+	private final File file;
+	private final FileChannel CHANNEL;
+	private MappedByteBuffer MAP;
+	private int capacity, mask, recordSize;
+	private long epoch = 0;
+	private long position = 0; // sequence number of the next record
+	private long lost = 0;
+
+	// current record
+	private long sequence = -1;
+	private int kind, identity;
+	private double time;
+	private final double[] VALUES = new double[SampleRing.VALUES];
+
+	private SampleRingReader( File file ) throws IOException {
+		this.file = file;
+		CHANNEL = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		try {
+			if ( !map() )
+				throw new IOException( "Ring not initialised: " + file );
+		} catch ( IOException e ) {
+			CHANNEL.close();
+			throw e;
+		}
+		// start at the oldest record still in the ring
+		position = Math.max( 0, published() - capacity );
+	}
+
+	// reader of the ring in the given file, positioned at the oldest record still in the ring
+	public static SampleRingReader open( File file ) throws IOException {
+		return new SampleRingReader( file );
+	}
+
+	// map the ring of the current epoch, false while the writer initialises it
+	private boolean map() throws IOException {
+		long size = CHANNEL.size();
+		if ( size < SampleRing.HEADER_SIZE )
+			throw new IOException( "Invalid ring file: " + file );
+		MappedByteBuffer M = CHANNEL.map( FileChannel.MapMode.READ_ONLY, 0, size );
+		M.order( ByteOrder.LITTLE_ENDIAN );
+		long e = M.getLong( SampleRing.EPOCH_OFFSET );
+		if ( e == 0 )
+			return false;
+		SampleRing.loadFence();
+		byte[] MAGIC = new byte[SampleRing.MAGIC.length];
+		M.get( MAGIC );
+		int headerSize = M.getInt( SampleRing.HEADER_SIZE_OFFSET );
+		int c = M.getInt( SampleRing.CAPACITY_OFFSET );
+		int r = M.getInt( SampleRing.RECORD_SIZE_OFFSET );
+		SampleRing.loadFence();
+		if ( M.getLong( SampleRing.EPOCH_OFFSET ) != e )
+			return false; // initialised again while the header was read
+		if ( !Arrays.equals( MAGIC, SampleRing.MAGIC ) || headerSize != SampleRing.HEADER_SIZE || r < SampleRing.RECORD_SIZE
+				|| c < 2 || Integer.bitCount( c ) != 1 || size < headerSize + (long) c * r )
+			throw new IOException( "Invalid ring file: " + file );
+		MAP = M;
+		capacity = c;
+		mask = c - 1;
+		recordSize = r;
+		epoch = e;
+		return true;
+	}
+
+	// next record, false if there is no new record; the fields of the record are valid until the next call
+	public boolean next() {
+		for ( ;; ) {
+			if ( MAP.getLong( SampleRing.EPOCH_OFFSET ) != epoch && !restart() )
+				return false;
+			long published = MAP.getLong( SampleRing.PUBLISHED_OFFSET );
+			SampleRing.loadFence();
+			if ( position >= published )
+				return false;
+			if ( published - position > capacity ) {
+				// overwritten before they were read
+				lost += published - capacity - position;
+				position = published - capacity;
+			}
+			int p = SampleRing.HEADER_SIZE + (int) ( position & mask ) * recordSize;
+			long before = MAP.getLong( p + SampleRing.SEQUENCE );
+			SampleRing.loadFence();
+			kind = MAP.getInt( p + SampleRing.KIND );
+			identity = MAP.getInt( p + SampleRing.IDENTITY );
+			time = MAP.getDouble( p + SampleRing.TIME );
+			for ( int i = 0; i < VALUES.length; ++i )
+				VALUES[i] = MAP.getDouble( p + SampleRing.VALUES_OFFSET + 8 * i );
+			SampleRing.loadFence();
+			long after = MAP.getLong( p + SampleRing.SEQUENCE );
+			if ( before == position && after == position ) {
+				sequence = position++;
+				return true;
+			}
+			// the writer has overwritten the slot while it was read: it is a lap ahead
+			lost++;
+			position++;
+		}
+	}
+
+	// the writer has initialised the ring again: start at its first record
+	private boolean restart() {
+		try {
+			if ( !map() )
+				return false;
+		} catch ( IOException e ) {
+			return false;
+		}
+		position = 0;
+		sequence = -1;
+		return true;
+	}
+
+	// up to max records as rows of ROW doubles {sequence, kind, identity, time, values}, empty if there is no new record
+	public double[] read( int max ) {
+		double[] ROWS = new double[max * ROW];
+		int n = 0;
+		while ( n < max && next() ) {
+			int p = n * ROW;
+			ROWS[p] = sequence;
+			ROWS[p + 1] = kind;
+			ROWS[p + 2] = identity;
+			ROWS[p + 3] = time;
+			System.arraycopy( VALUES, 0, ROWS, p + 4, VALUES.length );
+			n++;
+		}
+		return n == max ? ROWS : Arrays.copyOf( ROWS, n * ROW );
+	}
+
+	// continue with the next record that will be published (skip the records in the ring)
+	public void skipToLatest() {
+		position = Math.max( position, published() );
+	}
+
+	// --- current record ---
+	public long sequence() {
+		return sequence;
+	}
+
+	public int kind() {
+		return kind;
+	}
+
+	public int identity() {
+		return identity;
+	}
+
+	// session time (ns)
+	public double time() {
+		return time;
+	}
+
+	// value i of the record (see SampleRing)
+	public double value( int i ) {
+		return VALUES[i];
+	}
+
+	// --- ring ---
+	// records published by the writer so far
+	public long published() {
+		return MAP.getLong( SampleRing.PUBLISHED_OFFSET );
+	}
+
+	// sequence number of the next record to be read
+	public long position() {
+		return position;
+	}
+
+	// records overwritten before this reader could read them
+	public long lost() {
+		return lost;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	// epoch of the ring (changes when a writer initialises it again)
+	public long epoch() {
+		return epoch;
+	}
+
+	// wall clock (us since 1970) at session time 0, 0 before the session has started
+	public long wallClockOrigin() {
+		return MAP.getLong( SampleRing.WALL_CLOCK_OFFSET );
+	}
+
+	// true when the writer has closed the ring (the records in it can still be read)
+	public boolean isClosed() {
+		return MAP.getInt( SampleRing.CLOSED_OFFSET ) == 1 && MAP.getLong( SampleRing.EPOCH_OFFSET ) == epoch;
+	}
+
+	public void close() throws IOException {
+		CHANNEL.close();
+	}
+
+	// write the records as text lines {sequence, kind, identity, time, values of the kind} until the ring is closed
+	private void toText( OutputStream out ) throws IOException {
+		SampleEncoder ENCODER = new SampleEncoder();
+		long reported = 0;
+		for ( ;; ) {
+			boolean closed = isClosed(); // before the last records are read
+			if ( !next() ) {
+				out.flush();
+				if ( closed )
+					return;
+				LockSupport.parkNanos( 1000000 );
+				continue;
+			}
+			if ( lost != reported ) {
+				out.write( ( "% lost " + ( lost - reported ) + System.lineSeparator() ).getBytes( StandardCharsets.US_ASCII ) );
+				reported = lost;
+			}
+			ENCODER.reset().putLong( sequence ).putInt( kind ).putInt( identity ).putDouble( time );
+			for ( int i = 0; i < SampleRing.values( kind ); ++i )
+				ENCODER.putDouble( VALUES[i] );
+			ENCODER.endLine();
+			out.write( ENCODER.buffer(), 0, ENCODER.length() );
+		}
+	}
+
+	// --- loopback check: a writer thread publishes samples at a fixed rate to a reader in the same JVM ---
+
+	// true if the reader has received every record in order and intact
+	private static boolean loopback( final double rate, double seconds ) throws IOException, InterruptedException {
+		final int capacity = 4096;
+		final long records = Math.round( rate * seconds );
+		File file = File.createTempFile( "sesRing", ".bin" );
+		file.deleteOnExit();
+		final SampleRingWriter WRITER = SampleRingWriter.open( file, capacity );
+		SampleRingReader READER = open( file );
+
+		// live: the reader keeps up, nothing may be lost
+		Thread THREAD = new Thread( "PolyTouch-ring-writer" ) {
+			public void run() {
+				long start = System.nanoTime();
+				for ( long n = 0; n < records; ++n ) {
+					long due = start + (long) ( n * 1e9 / rate );
+					while ( System.nanoTime() < due )
+						LockSupport.parkNanos( Math.max( 1, due - System.nanoTime() - 50000 ) );
+					WRITER.sample( (int) n, (int) ( n >> 32 ), n, -n, 0, 0, 1, 1, n, 0, 0, System.nanoTime(), 1 );
+				}
+			}
+		};
+		THREAD.setDaemon( true );
+		THREAD.setPriority( Thread.MAX_PRIORITY );
+		LatencyHistogram LATENCY = new LatencyHistogram();
+		long received = 0, disorder = 0, corrupt = 0;
+		long t0 = System.nanoTime();
+		THREAD.start();
+		for ( ;; ) {
+			if ( READER.next() ) {
+				LATENCY.record( System.nanoTime() - (long) READER.time() );
+				if ( READER.sequence() != received + READER.lost() ) // records are either received or reported as lost
+					disorder++;
+				if ( READER.kind() != SampleRing.SAMPLE || READER.value( 0 ) != (int) READER.sequence() || READER.value( 2 ) != READER.sequence()
+						|| READER.value( 3 ) != -READER.sequence() || READER.value( 8 ) != READER.sequence() )
+					corrupt++;
+				received++;
+			} else if ( !THREAD.isAlive() && READER.position() == READER.published() ) {
+				break;
+			} else {
+				LockSupport.parkNanos( 20000 );
+			}
+		}
+		double elapsed = ( System.nanoTime() - t0 ) / 1e9;
+		boolean live = received == records && READER.lost() == 0 && disorder == 0 && corrupt == 0;
+		System.out.println( String.format( Locale.ROOT, "Loopback: %d records at %.0f/s in %.3f s (%.0f/s), ring of %d records", records,
+				rate, elapsed, records / elapsed, capacity ) );
+		System.out.println( String.format( Locale.ROOT, "  received %d, lost %d, out of order %d, corrupt %d: %s", received, READER.lost(),
+				disorder, corrupt, live ? "ok" : "FAILED" ) );
+		System.out.println( String.format( Locale.ROOT, "  latency writer -> reader (us): mean %.1f, p50 %.1f, p99 %.1f, max %.1f",
+				LATENCY.mean() / 1e3, LATENCY.percentile( 0.5 ) / 1e3, LATENCY.percentile( 0.99 ) / 1e3, LATENCY.max() / 1e3 ) );
+
+		// slow reader: the writer laps the reader, which must report exactly the overwritten records and then read the rest in order
+		long from = READER.position(), lostBefore = READER.lost(), behind = 3L * capacity + 17;
+		for ( long n = 0; n < behind; ++n )
+			WRITER.sample( (int) ( from + n ), 0, from + n, -( from + n ), 0, 0, 1, 1, from + n, 0, 0, System.nanoTime(), 1 );
+		WRITER.close();
+		long expectedLost = behind - capacity, rest = 0;
+		boolean slow = READER.next() && READER.sequence() == from + expectedLost && READER.lost() - lostBefore == expectedLost;
+		for ( long expected = from + expectedLost; slow && READER.sequence() == expected && READER.value( 2 ) == expected; ++expected ) {
+			rest++;
+			if ( !READER.next() )
+				break;
+		}
+		slow = slow && rest == capacity && READER.isClosed();
+		System.out.println( String.format( Locale.ROOT, "Slow reader: %d records behind, lost %d (expected %d), then read %d in order: %s",
+				behind, READER.lost() - lostBefore, expectedLost, rest, slow ? "ok" : "FAILED" ) );
+		READER.close();
+		return live && slow;
+	}
+
+	public static void main( String[] arg ) throws Exception {
+		if ( arg.length >= 1 && arg[0].equals( "-loopback" ) && arg.length <= 3 ) {
+			double rate = arg.length > 1 ? Double.parseDouble( arg[1] ) : 10000;
+			double seconds = arg.length > 2 ? Double.parseDouble( arg[2] ) : 10;
+			System.exit( loopback( rate, seconds ) ? 0 : 1 );
+		}
+		if ( arg.length != 1 ) {
+			System.out.println( "Usage: SampleRingReader sesRing.bin | -loopback [samplesPerSecond [seconds]]" );
+			System.exit( 1 );
+		}
+		SampleRingReader READER = null;
+		try {
+			READER = open( new File( arg[0] ) );
+		} catch ( IOException e ) {
+			System.out.println( e.getMessage() );
+			System.exit( 1 );
+		}
+		OutputStream out = new BufferedOutputStream( System.out, 1 << 16 );
+		READER.toText( out );
+		out.flush();
+		READER.close();
+	}
+}
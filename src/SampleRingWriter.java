@@ -0,0 +1,150 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// SAMPLE RING WRITER - publishes the records of a session into the shared-memory ring (layout: SampleRing), for local readers that tail
+// it (SampleRingReader). Records are stored directly into the mapping, there is no encoding, no copy and no system call per record;
+// readers see a record as soon as published is stored.
+// The ring holds polytouch.ring.capacity records (65536 = 8 MB, about 6 s at 10k samples/s); older records are overwritten, a reader
+// that falls behind by more than the capacity loses records (and knows how many). 0 disables the ring.
+// The file is sesRing_A?P?S?.bin, or polytouch.ring.file for a fixed path that readers can follow across sessions: an existing file is
+// not replaced but initialised again with a new epoch, so that readers that still map it (the file of the last session) start over.
+// There is one writer per ring; the tracking thread (samples, feedback) and the audio engine thread (stimulus onsets) publish through
+// the synchronized methods below.
+class SampleRingWriter {
+	static final int CAPACITY = Integer.getInteger( "polytouch.ring.capacity", 65536 );
+
+	private final FileChannel CHANNEL;
+	private final MappedByteBuffer MAP;
+	private final int mask;
+	private long published = 0;
+	private boolean closed = false;
+
+	private SampleRingWriter( File file, int capacity ) throws IOException {
+		if ( capacity < 2 || capacity > SampleRing.MAX_CAPACITY || Integer.bitCount( capacity ) != 1 )
+			throw new IllegalArgumentException( "Invalid ring capacity: " + capacity );
+		mask = capacity - 1;
+		CHANNEL = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		MAP = CHANNEL.map( FileChannel.MapMode.READ_WRITE, 0, SampleRing.HEADER_SIZE + (long) capacity * SampleRing.RECORD_SIZE );
+		MAP.order( ByteOrder.LITTLE_ENDIAN );
+
+		// epoch 0 while the header is written, then a new epoch (later than the one of the last writer of the file)
+		long epoch = Math.max( System.currentTimeMillis() * 1000, MAP.getLong( SampleRing.EPOCH_OFFSET ) + 1 );
+		MAP.putLong( SampleRing.EPOCH_OFFSET, 0 );
+		SampleRing.storeFence();
+		MAP.putInt( SampleRing.HEADER_SIZE_OFFSET, SampleRing.HEADER_SIZE );
+		MAP.putInt( SampleRing.RECORD_SIZE_OFFSET, SampleRing.RECORD_SIZE );
+		MAP.putInt( SampleRing.CAPACITY_OFFSET, capacity );
+		MAP.putInt( SampleRing.VALUES_COUNT_OFFSET, SampleRing.VALUES );
+		MAP.putLong( SampleRing.WALL_CLOCK_OFFSET, 0 );
+		MAP.putInt( SampleRing.CLOSED_OFFSET, 0 );
+		MAP.putLong( SampleRing.PUBLISHED_OFFSET, 0 );
+		for ( int i = 0; i < SampleRing.MAGIC.length; ++i )
+			MAP.put( i, SampleRing.MAGIC[i] );
+		SampleRing.storeFence();
+		MAP.putLong( SampleRing.EPOCH_OFFSET, epoch );
+		SampleRing.storeFence();
+	}
+
+	// ring of the given capacity in the given file (an existing file is initialised again)
+	static SampleRingWriter open( File file, int capacity ) throws IOException {
+		return new SampleRingWriter( file, capacity );
+	}
+
+	// ring of a session, null if disabled
+	static SampleRingWriter forSession( SessionConfig CONFIG ) throws IOException {
+		if ( CAPACITY == 0 )
+			return null;
+		String ringFile = System.getProperty( "polytouch.ring.file" );
+		return open( ringFile != null ? new File( ringFile ) : CONFIG.file( "sesRing", ".bin" ), CAPACITY );
+	}
+
+	// wall clock (us since 1970) at session time 0
+	synchronized void setWallClockOrigin( long wallOriginUs ) {
+		MAP.putLong( SampleRing.WALL_CLOCK_OFFSET, wallOriginUs );
+	}
+
+	// tracked sample, columns as in the text sesFile (time: endTime)
+	synchronized void sample( int x, int y, double xCOM, double yCOM, double relHead, int pressure, int pointerID, int eventType,
+			double elapDistTot, double bodySpeed, double relDist, double time, int identity ) {
+		if ( closed )
+			return;
+		int p = begin( SampleRing.SAMPLE, identity, time );
+		put( p, 0, x );
+		put( p, 1, y );
+		put( p, 2, xCOM );
+		put( p, 3, yCOM );
+		put( p, 4, relHead );
+		put( p, 5, pressure );
+		put( p, 6, pointerID );
+		put( p, 7, eventType );
+		put( p, 8, elapDistTot );
+		put( p, 9, bodySpeed );
+		put( p, 10, relDist );
+		end( p );
+	}
+
+	// feedback trigger (gain < 0: silence) at session time (ns)
+	synchronized void feedback( double gain, double freq, double relDist, long time ) {
+		if ( closed )
+			return;
+		int p = begin( SampleRing.FEEDBACK, 0, time );
+		put( p, 0, gain );
+		put( p, 1, freq );
+		put( p, 2, relDist );
+		end( p );
+	}
+
+	// stimulus onset, times in session time (ns); the record time is the actual onset
+	synchronized void stimulus( int stimulus, int intRand, double gain, long scheduledNs, long actualNs ) {
+		if ( closed )
+			return;
+		int p = begin( SampleRing.STIMULUS, 0, actualNs );
+		put( p, 0, stimulus );
+		put( p, 1, intRand );
+		put( p, 2, gain );
+		put( p, 3, scheduledNs );
+		put( p, 4, actualNs );
+		end( p );
+	}
+
+	// mark the ring as closed for the readers; later records are ignored
+	synchronized void close() {
+		if ( closed )
+			return;
+		closed = true;
+		MAP.putInt( SampleRing.CLOSED_OFFSET, 1 );
+		SampleRing.storeFence();
+		try {
+			CHANNEL.close(); // the mapping stays valid
+		} catch ( IOException e ) {
+			e.printStackTrace();
+		}
+	}
+
+	// slot of the next record, marked as being written
+	private int begin( int kind, int identity, double time ) {
+		int p = SampleRing.HEADER_SIZE + (int) ( published & mask ) * SampleRing.RECORD_SIZE;
+		MAP.putLong( p + SampleRing.SEQUENCE, -1 );
+		SampleRing.storeFence();
+		MAP.putInt( p + SampleRing.KIND, kind );
+		MAP.putInt( p + SampleRing.IDENTITY, identity );
+		MAP.putDouble( p + SampleRing.TIME, time );
+		return p;
+	}
+
+	private void put( int p, int i, double value ) {
+		MAP.putDouble( p + SampleRing.VALUES_OFFSET + 8 * i, value );
+	}
+
+	// publish the record: its sequence number, then the count of the ring
+	private void end( int p ) {
+		SampleRing.storeFence();
+		MAP.putLong( p + SampleRing.SEQUENCE, published );
+		SampleRing.storeFence();
+		MAP.putLong( SampleRing.PUBLISHED_OFFSET, ++published );
+	}
+}
@@ -0,0 +1,189 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+
+// SESSION - one tracking session with its own config, clock, modules and output files, so that several sessions can run one after the
+// other in the same (warm) JVM. Lifecycle:
+// - configure (constructor): remove old output files, read zones and rules, create engine, feedback, occupancy grid, zone tracker and the
+//   shared-memory ring (SampleRingWriter)
+// - start(INPUT): start the session clock (SessionClock, sync markers in sesSync), audio feedback / stimuli, the tracking thread and the input,
+//   and register the metrics MBean (SessionMetrics)
+// - awaitEnd(): wait until the session duration is reached or the input source is finished and tracked
+// - stop(): stop input and threads, close the output files, save heatmap and latency summary (also called when the JVM exits)
+// - reset(): stop and configure again, for a new run of the same session
+// Nothing of a session is kept in static fields; only the LatencyTrace histograms and SessionMetrics counters are process wide and reset
+// by start().
+class Session {
+	private final SessionConfig CONFIG;
+
+	private SessionClock CLOCK;
+	private SampleRingWriter RING; // samples and stimuli for local readers, null if disabled
+	private ZoneIndex INDEX;
+	private OccupancyGrid HEATMAP;
+	private TrackingEngine ENGINE;
+	private TriggerSound FEEDBACK;
+	private FeedbackRules RULES;
+	private ZoneTracker ZONETRACKER;
+	private SessionMetrics METRICS; // MBean while the session runs, null if disabled
+
+	private PointerInputSource INPUT = null;
+	private Runnable SHUTDOWN = null; // stop() when the JVM exits, run before the log writers are closed
+	private long startNs;
+	private volatile boolean ended = false;
+	private boolean stopped = false;
+
+	Session( SessionConfig CONFIG ) throws IOException {
+		this.CONFIG = CONFIG;
+		configure();
+	}
+
+	private void configure() throws IOException {
+		// remove old files if already exist
+		CONFIG.file( "sesFile", ".txt" ).delete();
+		CONFIG.file( "sesFile", ".bin" ).delete();
+		CONFIG.file( "sesAudioFile", ".txt" ).delete();
+		CONFIG.file( "sesStimFile", ".txt" ).delete();
+		CONFIG.file( "sesZoneFile", ".txt" ).delete();
+		CONFIG.file( "sesSync", ".txt" ).delete();
+
+		// read the zones and select the feedback rules of the session (null: no rule based feedback)
+		INDEX = new ZoneIndex( Zone.forSession( CONFIG ) );
+		HEATMAP = OccupancyGrid.forSession();
+		CLOCK = new SessionClock( CONFIG.file( "sesSync", ".txt" ) );
+		RING = SampleRingWriter.forSession( CONFIG ); // an existing ring file is initialised again, readers may still map it
+		ENGINE = new TrackingEngine( CONFIG, CLOCK, RING );
+		FEEDBACK = new TriggerSound( CONFIG, ENGINE.state(), CLOCK, RING );
+		RULES = FeedbackRules.forSession( CONFIG, INDEX, FEEDBACK );
+		ZONETRACKER = new ZoneTracker( INDEX, CONFIG.file( "sesZoneFile", ".txt" ) );
+
+		ENGINE.addTrackingListener( HEATMAP ); // live occupancy, saved at the end of the session
+		ENGINE.addTrackingListener( ZONETRACKER ); // zone entry and exit events
+		if ( RULES != null )
+			ENGINE.addTrackingListener( RULES ); // closed-loop feedback on the tracking thread
+		ENGINE.setSessionEndHandler( new Runnable() {
+			public void run() {
+				ended = true;
+			}
+		} );
+		INPUT = null;
+		SHUTDOWN = null;
+		ended = false;
+		stopped = false;
+	}
+
+	/** --- CLOSE-LOOP FEEDBACK AND TRACKING THREADS --- */
+	synchronized void start( PointerInputSource INPUT ) throws Exception {
+		if ( this.INPUT != null || stopped )
+			throw new IllegalStateException( "Session " + CONFIG.tag() + " already started" );
+		LatencyTrace.reset();
+		SessionMetrics.reset();
+		CLOCK.start(); // session time 0 for all files of the session
+		if ( RING != null )
+			RING.setWallClockOrigin( CLOCK.wallOriginUs() );
+		if ( RULES != null ) {
+			// rule based feedback (protocol 1 session 2-4, protocol 2, or polytouch.rules): evaluated on every tracked sample
+			FEEDBACK.init();
+			System.out.println( "Initializing rule based feedback protocol (" + RULES.size() + " rules)..." );
+		} else if ( CONFIG.protocolID == 1 && CONFIG.sessionID == 5 ) {
+			// create 9x pseudo-randomised stimulus vector: 3x 39/49/59dB
+			ArrayList< Integer > intRand = new ArrayList< Integer >();
+			for ( int i = 0; i < 9; ++i )
+				intRand.add( i );
+			// generate pseudo-random numbers by shuffling array of numbers 1:9
+			Collections.shuffle( intRand );
+
+			// schedule all stimuli at audio frame positions
+			FEEDBACK.playStimuli( intRand );
+			System.out.println( "Initializing random feedback protocol..." );
+		}
+
+		this.INPUT = INPUT;
+		INPUT.addPointerEventListener( ENGINE );
+		startNs = System.nanoTime();
+		ENGINE.start();
+		INPUT.start();
+		METRICS = SessionMetrics.register( CONFIG.tag(), ENGINE ); // JMX: PolyTouch:type=Session
+
+		// files are completed if the JVM exits during the session (UI frame closed): the shutdown hook of the log writers stops the
+		// session (input, engine drained, its own writers closed) before it closes the writers that are still open
+		SHUTDOWN = new Runnable() {
+			public void run() {
+				Session.this.stop();
+			}
+		};
+		SessionLogWriter.addShutdownTask( SHUTDOWN );
+		System.out.println( "Session " + CONFIG.tag() + " started" );
+	}
+
+	// true when the session duration is reached, or the input source is finished and all its events are tracked
+	boolean isEnded() {
+		return ended || ( INPUT != null && INPUT.isFinished() && ENGINE.isIdle() );
+	}
+
+	void awaitEnd() throws InterruptedException {
+		while ( !isEnded() )
+			Thread.sleep( 10 );
+	}
+
+	synchronized void stop() {
+		if ( stopped )
+			return;
+		stopped = true;
+		if ( METRICS != null ) {
+			METRICS.unregister();
+			METRICS = null;
+		}
+		if ( INPUT != null ) {
+			INPUT.stop();
+			INPUT.removePointerEventListener( ENGINE );
+		}
+		try {
+			ENGINE.close();
+		} catch ( IOException e ) {
+			e.printStackTrace();
+		}
+		CLOCK.close(); // last sync marker while the audio device is open
+		FEEDBACK.close();
+		if ( RING != null )
+			RING.close(); // readers see the end of the session
+		try {
+			ZONETRACKER.close();
+			HEATMAP.write( CONFIG.file( "sesHeatmap", ".bin" ) ); // occupancy grid of the session
+			if ( INPUT != null )
+				LatencyTrace.writeSummary( CONFIG.file( "sesLatency", ".txt" ) ); // closed-loop latency next to the audio file
+		} catch ( IOException e ) {
+			e.printStackTrace();
+		}
+		if ( INPUT != null ) {
+			double seconds = ( System.nanoTime() - startNs ) / 1e9;
+			System.out.println( String.format( Locale.ROOT, "Session %s: %d events tracked in %.3f s (%.0f events/s), %d dropped",
+					CONFIG.tag(), ENGINE.processed(), seconds, ENGINE.processed() / seconds, ENGINE.dropped() ) );
+		}
+		if ( SHUTDOWN != null )
+			SessionLogWriter.removeShutdownTask( SHUTDOWN );
+	}
+
+	// stop and configure a new run of this session (output files of the previous run are replaced)
+	synchronized void reset() throws IOException {
+		stop();
+		configure();
+	}
+
+	SessionConfig config() {
+		return CONFIG;
+	}
+
+	TrackingEngine engine() {
+		return ENGINE;
+	}
+
+	ZoneIndex zones() {
+		return INDEX;
+	}
+
+	OccupancyGrid heatmap() {
+		return HEATMAP;
+	}
+}
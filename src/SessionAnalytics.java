@@ -0,0 +1,220 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** SESSION ANALYTICS - summary table over archives of session files, one row per animal, protocol and session (SessionSummary).
+ *  The arguments are session files and directories, which are searched recursively for sesFile_A?P?S?.txt and .bin (the binary file
+ *  is used if both exist). sesAudioFile and sesStimFile next to a sesFile are counted as feedback triggers and stimuli.
+ *  The files are parsed in parallel with fork/join (one task per file, results merged pairwise), every file is streamed once
+ *  (SampleDecoder or SessionColumnReader) without keeping its samples in memory.
+ *
+ *  Run: java -cp PolyTouch.jar SessionAnalytics dir|file ...
+ *  Options: -Dpolytouch.analytics.zoneRad=5 (target zone radius in cm, default: targetZoneRad of sesFileStart.txt),
+ *           -Dpolytouch.analytics.threads (default: number of cores), -Dpolytouch.analytics.out=summary.txt (default: console)
+ */
+public class SessionAnalytics {
+	private static final Pattern SESFILE = Pattern.compile( "sesFile_A(\\d+)P(\\d+)S(\\d+)\\.(txt|bin)" );
+
+	private final double targetZoneRad;
+
+	SessionAnalytics( double targetZoneRad ) {
+		this.targetZoneRad = targetZoneRad;
+	}
+
+	// all session files below the given files and directories
+	static List< File > collect( String[] PATHS ) {
+		ArrayList< File > FILES = new ArrayList< File >();
+		for ( String path : PATHS )
+			collect( new File( path ), FILES );
+		Collections.sort( FILES );
+		return FILES;
+	}
+
+	private static void collect( File path, List< File > FILES ) {
+		File[] CHILDREN = path.listFiles();
+		if ( CHILDREN == null ) {
+			Matcher M = SESFILE.matcher( path.getName() );
+			// a text file with a binary file next to it holds the same samples
+			if ( M.matches() && !( M.group( 4 ).equals( "txt" ) && sibling( path, ".bin" ).exists() ) )
+				FILES.add( path );
+			return;
+		}
+		for ( File CHILD : CHILDREN )
+			collect( CHILD, FILES );
+	}
+
+	private static File sibling( File sesFile, String extension ) {
+		String name = sesFile.getName();
+		return new File( sesFile.getParentFile(), name.substring( 0, name.lastIndexOf( '.' ) ) + extension );
+	}
+
+	// summaries of FILES by key (animal, protocol, session), in parallel
+	Map< Long, SessionSummary > summarize( List< File > FILES, int threads ) {
+		ForkJoinPool POOL = new ForkJoinPool( threads );
+		try {
+			return POOL.invoke( new SummaryTask( FILES, 0, FILES.size() ) );
+		} finally {
+			POOL.shutdown();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class SummaryTask extends RecursiveTask< Map< Long, SessionSummary > > {
+		private final List< File > FILES;
+		private final int from, to;
+
+		SummaryTask( List< File > FILES, int from, int to ) {
+			this.FILES = FILES;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Map< Long, SessionSummary > compute() {
+			if ( to - from <= 1 ) {
+				HashMap< Long, SessionSummary > RESULT = new HashMap< Long, SessionSummary >();
+				if ( to > from ) {
+					File file = FILES.get( from );
+					try {
+						SessionSummary S = summarize( file );
+						RESULT.put( S.key(), S );
+					} catch ( IOException e ) {
+						System.out.println( "Skipped " + file + ": " + e.getMessage() );
+					} catch ( RuntimeException e ) {
+						// invalid file name or corrupt file (e.g. a truncated .bin): the other files are still summarized
+						System.out.println( "Skipped " + file + ": " + e );
+					}
+				}
+				return RESULT;
+			}
+			int middle = ( from + to ) >>> 1;
+			SummaryTask LEFT = new SummaryTask( FILES, from, middle );
+			LEFT.fork();
+			Map< Long, SessionSummary > RIGHT = new SummaryTask( FILES, middle, to ).compute();
+			return merge( LEFT.join(), RIGHT );
+		}
+	}
+
+	private static Map< Long, SessionSummary > merge( Map< Long, SessionSummary > A, Map< Long, SessionSummary > B ) {
+		if ( A.size() < B.size() ) {
+			Map< Long, SessionSummary > SWAP = A;
+			A = B;
+			B = SWAP;
+		}
+		for ( SessionSummary S : B.values() ) {
+			SessionSummary T = A.get( S.key() );
+			if ( T == null )
+				A.put( S.key(), S );
+			else
+				T.merge( S );
+		}
+		return A;
+	}
+
+	// summary of one sesFile (text or binary) with its sesAudioFile and sesStimFile
+	SessionSummary summarize( File sesFile ) throws IOException {
+		Matcher M = SESFILE.matcher( sesFile.getName() );
+		if ( !M.matches() )
+			throw new IllegalArgumentException( "Invalid session file name: " + sesFile.getName() );
+		SessionSummary S = new SessionSummary( Integer.parseInt( M.group( 1 ) ), Integer.parseInt( M.group( 2 ) ), Integer.parseInt( M.group( 3 ) ) );
+		S.begin();
+		if ( M.group( 4 ).equals( "bin" ) ) {
+			SessionColumnReader R = SessionColumnReader.open( sesFile );
+			int pointerID = R.column( "pointerID" ), eventType = R.column( "eventType" ), elapDistTot = R.column( "elapDistTot" );
+			int bodySpeed = R.column( "bodySpeed" ), relDist = R.column( "relDist" ), endTime = R.column( "endTime" );
+			int identity = R.column( "identity" );
+			for ( long r = 0; r < R.size(); ++r ) {
+				S.sample( R.getInt( r, pointerID ), R.getInt( r, eventType ), R.getDouble( r, elapDistTot ), R.getDouble( r, bodySpeed ),
+						R.getDouble( r, relDist ), R.getDouble( r, endTime ), R.getInt( r, identity ), targetZoneRad );
+			}
+		} else {
+			// columns: x y xCOM yCOM relHead pressure pointerID eventType elapDistTot bodySpeed relDist endTime (identity)
+			double[] ROW = new double[13];
+			InputStream in = new FileInputStream( sesFile );
+			try {
+				SampleDecoder DECODER = new SampleDecoder( in );
+				int n;
+				while ( ( n = DECODER.next( ROW ) ) != -1 ) {
+					if ( n < 12 )
+						continue;
+					S.sample( (int) ROW[6], (int) ROW[7], ROW[8], ROW[9], ROW[10], ROW[11], n > 12 ? (int) ROW[12] : 1, targetZoneRad );
+				}
+			} finally {
+				in.close();
+			}
+		}
+		S.end();
+		String tag = "_A" + M.group( 1 ) + "P" + M.group( 2 ) + "S" + M.group( 3 ) + ".txt";
+		S.feedback += lines( new File( sesFile.getParentFile(), "sesAudioFile" + tag ) );
+		S.stimuli += lines( new File( sesFile.getParentFile(), "sesStimFile" + tag ) );
+		return S;
+	}
+
+	// number of non-empty lines, 0 if the file does not exist
+	static long lines( File file ) throws IOException {
+		if ( !file.exists() )
+			return 0;
+		InputStream in = new BufferedInputStream( new FileInputStream( file ), 1 << 16 );
+		try {
+			long lines = 0;
+			boolean empty = true;
+			int b;
+			while ( ( b = in.read() ) != -1 ) {
+				if ( b == '\n' ) {
+					if ( !empty )
+						lines++;
+					empty = true;
+				} else if ( b != '\r' && b != ' ' ) {
+					empty = false;
+				}
+			}
+			return empty ? lines : lines + 1;
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main( String[] arg ) throws IOException {
+		if ( arg.length == 0 ) {
+			System.out.println( "Usage: SessionAnalytics dir|file ..." );
+			System.exit( 1 );
+		}
+		double targetZoneRad = 0;
+		try {
+			String zoneRad = System.getProperty( "polytouch.analytics.zoneRad" );
+			targetZoneRad = zoneRad != null ? Double.parseDouble( zoneRad ) : SessionConfig.forSession().targetZoneRad;
+		} catch ( IOException e ) {
+			System.out.println( "Invalid target zone radius: set polytouch.analytics.zoneRad (" + e.getMessage() + ")" );
+			System.exit( 1 );
+		}
+		int threads = Integer.getInteger( "polytouch.analytics.threads", Runtime.getRuntime().availableProcessors() );
+
+		List< File > FILES = collect( arg );
+		long startNs = System.nanoTime();
+		Map< Long, SessionSummary > SUMMARIES = new TreeMap< Long, SessionSummary >( new SessionAnalytics( targetZoneRad ).summarize( FILES, threads ) );
+		double seconds = ( System.nanoTime() - startNs ) / 1e9;
+
+		String outFile = System.getProperty( "polytouch.analytics.out" );
+		PrintStream out = outFile != null ? new PrintStream( outFile ) : System.out;
+		out.println( "% session summary of " + FILES.size() + " files, target zone radius " + targetZoneRad + " cm" );
+		out.println( SessionSummary.HEADER );
+		for ( SessionSummary S : SUMMARIES.values() )
+			out.println( S.row() );
+		if ( out != System.out )
+			out.close();
+		System.out.println( String.format( Locale.ROOT, "Summarized %d files in %.3f s (%d threads)", FILES.size(), seconds, threads ) );
+	}
+}
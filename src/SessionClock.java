@@ -0,0 +1,129 @@
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+// SESSION CLOCK - the one timebase of a session, shared by tracking, feedback, stimuli and zone events.
+// Session time is System.nanoTime() since start() (Session.start); every time saved in the session files (sesFile column 12, sesAudioFile,
+// sesStimFile, sesZoneFile) is session time in ns, taken at the event: pointer events at ingress (PointerEvent.ingressNs), stimuli at
+// their onset at the audio device, feedback triggers when the target is handed to the audio engine. The files can therefore be joined
+// on their time columns without offsets.
+// start() anchors session time 0 to the wall clock: the clock waits for the next tick of System.currentTimeMillis() (at most
+// ANCHOR_MS), so the anchor is exact to the resolution of nanoTime rather than to the tick of the wall clock (up to 16 ms on Windows).
+// Sync markers are saved every polytouch.clock.sync ms (1000, 0 = none) in sesSync_A?P?S?.txt with content {session time (ns),
+// wall clock (us since 1970), audio frames played (-1 without audio)}, so that offline tools can follow the drift of the wall clock and
+// of the sound card against session time (e.g. to align a WAV recording sample by sample); the first lines (% comments) give the anchor.
+class SessionClock {
+	static final long SYNC_MS = Long.getLong( "polytouch.clock.sync", 1000 );
+	private static final long ANCHOR_MS = 50;
+
+	private final File syncFile;
+	private volatile long originNs;
+	private long wallOriginUs; // wall clock at session time 0
+	private SessionLogWriter SYNCLOG;
+	private Thread THREAD;
+	private volatile boolean running = false;
+	private final SampleEncoder ENCODER = new SampleEncoder(); // marker thread only
+
+	SessionClock( File syncFile ) {
+		this.syncFile = syncFile;
+		originNs = System.nanoTime();
+		wallOriginUs = System.currentTimeMillis() * 1000;
+	}
+
+	// set session time 0 to now and start the sync markers
+	synchronized void start() throws IOException {
+		// anchor at a tick of the wall clock: nanoTime right after currentTimeMillis has changed
+		long first = System.currentTimeMillis();
+		long wall = first;
+		long nano = System.nanoTime();
+		long limit = nano + ANCHOR_MS * 1000000;
+		while ( wall == first && nano < limit ) {
+			wall = System.currentTimeMillis();
+			nano = System.nanoTime();
+		}
+		originNs = nano;
+		wallOriginUs = wall * 1000;
+
+		if ( SYNC_MS > 0 ) {
+			SYNCLOG = SessionLogWriter.open( syncFile );
+			header();
+			running = true;
+			THREAD = new Thread( "PolyTouch-clock" ) {
+				public void run() {
+					while ( running ) {
+						marker();
+						try {
+							Thread.sleep( SYNC_MS );
+						} catch ( InterruptedException e ) {
+							return;
+						}
+					}
+				}
+			};
+			THREAD.setDaemon( true );
+			THREAD.start();
+		}
+	}
+
+	// session time (ns) now
+	long now() {
+		return System.nanoTime() - originNs;
+	}
+
+	// session time (ns) of a System.nanoTime() time stamp
+	long elapsed( long nanoTime ) {
+		return nanoTime - originNs;
+	}
+
+	// System.nanoTime() of session time 0
+	long originNs() {
+		return originNs;
+	}
+
+	// wall clock (us since 1970) at session time 0
+	long wallOriginUs() {
+		return wallOriginUs;
+	}
+
+	// wall clock (us since 1970) of a session time (ns), without drift correction
+	long wallClockUs( long sessionNs ) {
+		return wallOriginUs + sessionNs / 1000;
+	}
+
+	private void header() {
+		SimpleDateFormat FORMAT = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT );
+		FORMAT.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+		SYNCLOG.appendLine( "% session time 0 = " + FORMAT.format( new Date( wallOriginUs / 1000 ) ) + " = " + wallOriginUs + " us since 1970" );
+		SYNCLOG.appendLine( "% content: {session time (ns), wall clock (us since 1970), audio frames played}" );
+	}
+
+	// one sync marker: session time in the middle of the wall clock reading
+	private void marker() {
+		long before = System.nanoTime();
+		long wall = System.currentTimeMillis();
+		long after = System.nanoTime();
+		AudioEngine AUDIO = LatencyTrace.AUDIO;
+		long frames = AUDIO != null ? AUDIO.framePosition() : -1;
+		ENCODER.reset().putLong( elapsed( before + ( after - before ) / 2 ) ).putLong( wall * 1000 ).putLong( frames ).endLine();
+		SYNCLOG.append( ENCODER.buffer(), 0, ENCODER.length() );
+	}
+
+	// last marker and close sesSync
+	synchronized void close() {
+		if ( SYNCLOG == null )
+			return;
+		running = false;
+		THREAD.interrupt();
+		try {
+			THREAD.join( 1000 );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		marker();
+		SYNCLOG.close();
+		SYNCLOG = null;
+	}
+}
@@ -0,0 +1,237 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** SESSION COLUMN READER - reads a binary session file (layout: SessionColumns) through a read-only memory mapping.
+ *  The columns are found by name in the header, so readers do not depend on the record layout of the writer. seek() finds the first
+ *  record of a time window in O(log n): binary search in the sparse time index, then in the records between two index entries
+ *  (a file without index, e.g. one that is still written, is searched record by record in O(log n) as well). Columns are copied into
+ *  primitive arrays, e.g. from MATLAB:
+ *    r = SessionColumnReader.open(java.io.File('sesFile_A1P1S2.bin')); x = r.column('xCOM', 0, r.size());
+ *
+ *  Converter to the text layout of sesFile (same numbers as written by the TrackingEngine):
+ *    java -cp PolyTouch.jar SessionColumnReader sesFile_A1P1S2.bin [sesFile_A1P1S2.txt [fromSec toSec]]
+ */
+public class SessionColumnReader {
+	private final String[] NAMES;
+	private final int[] TYPES;
+	private final int[] OFFSETS;
+	private final int recordSize;
+	private final long count;
+	private final long wallOriginUs;
+	private final int time; // column of the index
+
+	private final double[] INDEX_TIME;
+	private final long[] INDEX_RECORD;
+
+	// records in regions of at most regionRecords records (a mapping is limited to 2 GB)
+	private final MappedByteBuffer[] REGIONS;
+	private final int regionRecords;
+
+	private SessionColumnReader( File file ) throws IOException {
+		FileChannel CHANNEL = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		try {
+			if ( CHANNEL.size() < SessionColumns.HEADER_SIZE )
+				throw new IOException( "Invalid session column file: " + file );
+			MappedByteBuffer HEADER = CHANNEL.map( FileChannel.MapMode.READ_ONLY, 0, SessionColumns.HEADER_SIZE );
+			HEADER.order( ByteOrder.LITTLE_ENDIAN );
+			byte[] MAGIC = new byte[SessionColumns.MAGIC.length];
+			HEADER.get( MAGIC );
+			if ( !Arrays.equals( MAGIC, SessionColumns.MAGIC ) )
+				throw new IOException( "Invalid session column file: " + file );
+			int headerSize = HEADER.getInt( SessionColumns.HEADER_SIZE_OFFSET );
+			recordSize = HEADER.getInt( SessionColumns.RECORD_SIZE_OFFSET );
+			int nColumns = HEADER.getInt( SessionColumns.COLUMNS_OFFSET );
+			long indexOffset = HEADER.getLong( SessionColumns.INDEX_OFFSET );
+			int nIndex = (int) HEADER.getLong( SessionColumns.INDEX_COUNT_OFFSET );
+			wallOriginUs = HEADER.getLong( SessionColumns.WALL_CLOCK_OFFSET );
+			// records of a file that is still written: only the complete ones
+			count = Math.min( HEADER.getLong( SessionColumns.COUNT_OFFSET ), ( CHANNEL.size() - headerSize ) / recordSize );
+
+			NAMES = new String[nColumns];
+			TYPES = new int[nColumns];
+			OFFSETS = new int[nColumns];
+			MappedByteBuffer DESCRIPTORS = CHANNEL.map( FileChannel.MapMode.READ_ONLY, 0, headerSize );
+			DESCRIPTORS.order( ByteOrder.LITTLE_ENDIAN );
+			for ( int i = 0; i < nColumns; ++i ) {
+				int p = SessionColumns.DESCRIPTORS_OFFSET + i * SessionColumns.DESCRIPTOR_SIZE;
+				byte[] NAME = new byte[SessionColumns.NAME_SIZE];
+				DESCRIPTORS.position( p );
+				DESCRIPTORS.get( NAME );
+				int length = 0;
+				while ( length < NAME.length && NAME[length] != 0 )
+					length++;
+				NAMES[i] = new String( NAME, 0, length, StandardCharsets.US_ASCII );
+				TYPES[i] = DESCRIPTORS.getInt( p + SessionColumns.NAME_SIZE );
+				OFFSETS[i] = DESCRIPTORS.getInt( p + SessionColumns.NAME_SIZE + 4 );
+			}
+			time = column( SessionColumns.TIME );
+
+			regionRecords = Integer.MAX_VALUE / recordSize;
+			REGIONS = new MappedByteBuffer[(int) ( ( count + regionRecords - 1 ) / regionRecords )];
+			for ( int r = 0; r < REGIONS.length; ++r ) {
+				long first = (long) r * regionRecords;
+				long n = Math.min( regionRecords, count - first );
+				REGIONS[r] = CHANNEL.map( FileChannel.MapMode.READ_ONLY, headerSize + first * recordSize, n * recordSize );
+				REGIONS[r].order( ByteOrder.LITTLE_ENDIAN );
+			}
+
+			if ( indexOffset > 0 && nIndex > 0 ) {
+				MappedByteBuffer INDEX = CHANNEL.map( FileChannel.MapMode.READ_ONLY, indexOffset, (long) nIndex * SessionColumns.INDEX_ENTRY_SIZE );
+				INDEX.order( ByteOrder.LITTLE_ENDIAN );
+				INDEX_TIME = new double[nIndex];
+				INDEX_RECORD = new long[nIndex];
+				for ( int i = 0; i < nIndex; ++i ) {
+					INDEX_TIME[i] = INDEX.getDouble();
+					INDEX_RECORD[i] = INDEX.getLong();
+				}
+			} else {
+				INDEX_TIME = new double[0];
+				INDEX_RECORD = new long[0];
+			}
+		} finally {
+			CHANNEL.close(); // the mappings stay valid
+		}
+	}
+
+	public static SessionColumnReader open( File file ) throws IOException {
+		return new SessionColumnReader( file );
+	}
+
+	// number of records
+	public long size() {
+		return count;
+	}
+
+	// wall clock (us since 1970) at endTime 0, 0 if unknown
+	public long wallClockOrigin() {
+		return wallOriginUs;
+	}
+
+	public String[] names() {
+		return NAMES.clone();
+	}
+
+	// column with this name
+	public int column( String name ) {
+		for ( int i = 0; i < NAMES.length; ++i ) {
+			if ( NAMES[i].equals( name ) )
+				return i;
+		}
+		throw new IllegalArgumentException( "Unknown column: " + name );
+	}
+
+	public int getInt( long record, int column ) {
+		MappedByteBuffer R = REGIONS[(int) ( record / regionRecords )];
+		int p = (int) ( record % regionRecords ) * recordSize + OFFSETS[column];
+		return TYPES[column] == SessionColumns.FLOAT64 ? (int) R.getDouble( p ) : R.getInt( p );
+	}
+
+	public double getDouble( long record, int column ) {
+		MappedByteBuffer R = REGIONS[(int) ( record / regionRecords )];
+		int p = (int) ( record % regionRecords ) * recordSize + OFFSETS[column];
+		return TYPES[column] == SessionColumns.FLOAT64 ? R.getDouble( p ) : R.getInt( p );
+	}
+
+	// first record with endTime >= timeNs (size() if there is none)
+	public long seek( double timeNs ) {
+		long lo = 0, hi = count;
+		// last index entry before timeNs and the entry after it bound the records to search
+		int a = 0, b = INDEX_TIME.length;
+		while ( a < b ) {
+			int m = ( a + b ) >>> 1;
+			if ( INDEX_TIME[m] < timeNs )
+				a = m + 1;
+			else
+				b = m;
+		}
+		if ( a > 0 )
+			lo = INDEX_RECORD[a - 1] + 1;
+		if ( a < INDEX_RECORD.length )
+			hi = Math.min( hi, INDEX_RECORD[a] );
+		while ( lo < hi ) {
+			long m = ( lo + hi ) >>> 1;
+			if ( getDouble( m, time ) < timeNs )
+				lo = m + 1;
+			else
+				hi = m;
+		}
+		return lo;
+	}
+
+	// copy column of the records from .. from+DEST.length-1 (as far as they exist) into DEST, returns the number of records copied
+	public int read( int column, long from, double[] DEST ) {
+		int n = (int) Math.max( 0, Math.min( DEST.length, count - from ) );
+		for ( int i = 0; i < n; ++i )
+			DEST[i] = getDouble( from + i, column );
+		return n;
+	}
+
+	public int read( int column, long from, int[] DEST ) {
+		int n = (int) Math.max( 0, Math.min( DEST.length, count - from ) );
+		for ( int i = 0; i < n; ++i )
+			DEST[i] = getInt( from + i, column );
+		return n;
+	}
+
+	// column of n records from from (fewer at the end of the file) as a new array
+	public double[] column( String name, long from, long n ) {
+		double[] DEST = new double[(int) Math.max( 0, Math.min( n, count - from ) )];
+		read( column( name ), from, DEST );
+		return DEST;
+	}
+
+	// write records from .. to-1 in the text layout of sesFile
+	public void toText( OutputStream out, long from, long to ) throws IOException {
+		int[] COLUMNS = new int[SessionColumns.TEXT_NAMES.length];
+		for ( int i = 0; i < COLUMNS.length; ++i )
+			COLUMNS[i] = column( SessionColumns.TEXT_NAMES[i] );
+		SampleEncoder ENCODER = new SampleEncoder();
+		for ( long r = from; r < to; ++r ) {
+			ENCODER.reset();
+			for ( int c : COLUMNS ) {
+				if ( TYPES[c] == SessionColumns.FLOAT64 )
+					ENCODER.putDouble( getDouble( r, c ) );
+				else
+					ENCODER.putInt( getInt( r, c ) );
+			}
+			ENCODER.endLine();
+			out.write( ENCODER.buffer(), 0, ENCODER.length() );
+		}
+	}
+
+	public static void main( String[] arg ) throws IOException {
+		if ( arg.length != 1 && arg.length != 2 && arg.length != 4 ) {
+			System.out.println( "Usage: SessionColumnReader sesFile.bin [sesFile.txt [fromSec toSec]]" );
+			System.exit( 1 );
+		}
+		SessionColumnReader READER = null;
+		try {
+			READER = open( new File( arg[0] ) );
+		} catch ( IOException e ) {
+			System.out.println( e.getMessage() );
+			System.exit( 1 );
+		}
+		String textFile = arg.length > 1 ? arg[1] : arg[0].replaceAll( "\\.bin$", "" ) + ".txt";
+		long from = 0, to = READER.size();
+		if ( arg.length == 4 ) {
+			from = READER.seek( Double.parseDouble( arg[2] ) * 1e9 );
+			to = READER.seek( Double.parseDouble( arg[3] ) * 1e9 );
+		}
+		OutputStream out = new BufferedOutputStream( new FileOutputStream( textFile ), 1 << 16 );
+		try {
+			READER.toText( out, from, to );
+		} finally {
+			out.close();
+		}
+		System.out.println( "Converted " + ( to - from ) + " of " + READER.size() + " records to " + textFile );
+	}
+}
@@ -0,0 +1,136 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// SESSION COLUMN WRITER - writes the tracked samples as fixed-width records (layout: SessionColumns) through a memory-mapped file.
+// The file is mapped in chunks of CHUNK_RECORDS records that are stored into directly by the tracking thread (no encoding, no copy,
+// no writer thread); the operating system writes the pages back. Every polytouch.columns.stride-th record (1024) gets an entry in
+// the sparse time index, which is kept in memory and appended after the last record by close(), which also forces the file to disk.
+// A single thread appends; close() must be called after the last append (the tracking thread has stopped).
+// A mapping is only released when it is garbage collected, and Windows can neither delete nor truncate a file that is mapped: a file
+// of an earlier run in the same JVM (Session.reset) may still be mapped. It is therefore not replaced but written over from the start
+// (readers go by the number of records and the index in the header) and truncated when possible.
+class SessionColumnWriter {
+	static final int INDEX_STRIDE = Integer.getInteger( "polytouch.columns.stride", 1024 );
+	private static final int CHUNK_RECORDS = 65536;
+
+	private final FileChannel CHANNEL;
+	private MappedByteBuffer HEADER;
+	private MappedByteBuffer CHUNK = null;
+	private long chunkEnd = 0; // first record after the mapped chunk
+	private long count = 0;
+
+	private double[] INDEX_TIME = new double[256];
+	private long[] INDEX_RECORD = new long[256];
+	private int nIndex = 0;
+	private boolean closed = false;
+
+	private SessionColumnWriter( File file ) throws IOException {
+		if ( INDEX_STRIDE < 1 )
+			throw new IllegalArgumentException( "Invalid index stride: " + INDEX_STRIDE );
+		CHANNEL = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		try {
+			CHANNEL.truncate( 0 );
+		} catch ( IOException e ) {
+			System.out.println( "Binary session file is still mapped, written over: " + file );
+		}
+		HEADER = CHANNEL.map( FileChannel.MapMode.READ_WRITE, 0, SessionColumns.HEADER_SIZE );
+		HEADER.order( ByteOrder.LITTLE_ENDIAN );
+		for ( int i = 0; i < SessionColumns.HEADER_SIZE; ++i )
+			HEADER.put( i, (byte) 0 ); // no records and no index (file of an earlier run)
+		HEADER.put( SessionColumns.MAGIC );
+		HEADER.putInt( SessionColumns.HEADER_SIZE_OFFSET, SessionColumns.HEADER_SIZE );
+		HEADER.putInt( SessionColumns.RECORD_SIZE_OFFSET, SessionColumns.RECORD_SIZE );
+		HEADER.putInt( SessionColumns.COLUMNS_OFFSET, SessionColumns.NAMES.length );
+		HEADER.putInt( SessionColumns.STRIDE_OFFSET, INDEX_STRIDE );
+		for ( int i = 0; i < SessionColumns.NAMES.length; ++i ) {
+			int p = SessionColumns.DESCRIPTORS_OFFSET + i * SessionColumns.DESCRIPTOR_SIZE;
+			byte[] NAME = SessionColumns.NAMES[i].getBytes( StandardCharsets.US_ASCII );
+			for ( int b = 0; b < NAME.length && b < SessionColumns.NAME_SIZE; ++b )
+				HEADER.put( p + b, NAME[b] );
+			HEADER.putInt( p + SessionColumns.NAME_SIZE, SessionColumns.TYPES[i] );
+			HEADER.putInt( p + SessionColumns.NAME_SIZE + 4, SessionColumns.OFFSETS[i] );
+		}
+	}
+
+	// Creates (writes over) the given file
+	static SessionColumnWriter open( File file ) throws IOException {
+		return new SessionColumnWriter( file );
+	}
+
+	// wall clock (us since 1970) at session time 0
+	void setWallClockOrigin( long wallOriginUs ) {
+		HEADER.putLong( SessionColumns.WALL_CLOCK_OFFSET, wallOriginUs );
+	}
+
+	// one record, columns as in the text sesFile; endTime must not decrease
+	void append( int x, int y, double xCOM, double yCOM, double relHead, int pressure, int pointerID, int eventType,
+			double elapDistTot, double bodySpeed, double relDist, double endTime, int identity ) throws IOException {
+		if ( count == chunkEnd )
+			map();
+		MappedByteBuffer R = CHUNK;
+		R.putInt( x ).putInt( y ).putDouble( xCOM ).putDouble( yCOM ).putDouble( relHead ).putInt( pressure ).putInt( pointerID )
+				.putInt( eventType ).putInt( identity ).putDouble( elapDistTot ).putDouble( bodySpeed ).putDouble( relDist ).putDouble( endTime );
+		if ( count % INDEX_STRIDE == 0 ) {
+			if ( nIndex == INDEX_TIME.length ) {
+				INDEX_TIME = Arrays.copyOf( INDEX_TIME, 2 * nIndex );
+				INDEX_RECORD = Arrays.copyOf( INDEX_RECORD, 2 * nIndex );
+			}
+			INDEX_TIME[nIndex] = endTime;
+			INDEX_RECORD[nIndex] = count;
+			nIndex++;
+		}
+		count++;
+		HEADER.putLong( SessionColumns.COUNT_OFFSET, count );
+	}
+
+	// map the next chunk (the file grows with the mapping); the pages of the last chunk are written back by the operating system
+	private void map() throws IOException {
+		long position = SessionColumns.HEADER_SIZE + count * SessionColumns.RECORD_SIZE;
+		CHUNK = CHANNEL.map( FileChannel.MapMode.READ_WRITE, position, (long) CHUNK_RECORDS * SessionColumns.RECORD_SIZE );
+		CHUNK.order( ByteOrder.LITTLE_ENDIAN );
+		chunkEnd = count + CHUNK_RECORDS;
+	}
+
+	long count() {
+		return count;
+	}
+
+	// append the time index, complete the header and force the file to disk
+	synchronized void close() throws IOException {
+		if ( closed )
+			return;
+		closed = true;
+		try {
+			if ( CHUNK != null )
+				CHUNK.force();
+			long indexOffset = SessionColumns.HEADER_SIZE + count * SessionColumns.RECORD_SIZE;
+			ByteBuffer INDEX = ByteBuffer.allocate( nIndex * SessionColumns.INDEX_ENTRY_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			for ( int i = 0; i < nIndex; ++i )
+				INDEX.putDouble( INDEX_TIME[i] ).putLong( INDEX_RECORD[i] );
+			INDEX.flip();
+			while ( INDEX.hasRemaining() )
+				CHANNEL.write( INDEX, indexOffset + INDEX.position() );
+			CHANNEL.force( false );
+			HEADER.putLong( SessionColumns.INDEX_OFFSET, indexOffset );
+			HEADER.putLong( SessionColumns.INDEX_COUNT_OFFSET, nIndex );
+			HEADER.force();
+			try {
+				// remove the unused rest of the last chunk (not possible on Windows while it is mapped: readers go by the header)
+				CHANNEL.truncate( indexOffset + (long) nIndex * SessionColumns.INDEX_ENTRY_SIZE );
+			} catch ( IOException e ) {
+				System.out.println( "Binary session file not truncated: " + e.getMessage() );
+			}
+		} finally {
+			CHANNEL.close();
+			HEADER = null; // the mappings are released when they are collected
+			CHUNK = null;
+		}
+	}
+}
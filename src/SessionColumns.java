@@ -0,0 +1,64 @@
+import java.nio.charset.StandardCharsets;
+
+// SESSION COLUMNS - layout of the binary session file (sesFile_A?P?S?.bin), shared by SessionColumnWriter and SessionColumnReader.
+// All numbers are little-endian. The file starts with a header of HEADER_SIZE bytes:
+//   0  8 bytes  magic "PTCOLS01"
+//   8  int32    header size (bytes, records start here)
+//  12  int32    record size (bytes)
+//  16  int32    number of columns
+//  20  int32    index stride (records between two index entries)
+//  24  int64    number of records (updated with every record, so that a file that is still written can be read)
+//  32  int64    offset of the time index (bytes, 0 while the file is written)
+//  40  int64    number of index entries
+//  48  int64    wall clock at session time 0 (us since 1970, 0 if unknown; endTime is session time, see SessionClock)
+//  64  per column 32 bytes: name (24 bytes ASCII, zero padded), int32 type (0 = int32, 1 = float64), int32 offset in the record
+// followed by fixed-width records (one per tracked pointer event, the columns of the text sesFile) and, after the last record, the
+// sparse time index: per entry float64 endTime (ns) and int64 record number of every index stride-th record.
+// The columns are ordered so that every float64 is 8-byte aligned in the record.
+class SessionColumns {
+	static final byte[] MAGIC = "PTCOLS01".getBytes( StandardCharsets.US_ASCII );
+	static final int HEADER_SIZE = 512;
+	static final int NAME_SIZE = 24;
+	static final int DESCRIPTOR_SIZE = 32;
+	static final int INDEX_ENTRY_SIZE = 16;
+
+	// header fields
+	static final int HEADER_SIZE_OFFSET = 8;
+	static final int RECORD_SIZE_OFFSET = 12;
+	static final int COLUMNS_OFFSET = 16;
+	static final int STRIDE_OFFSET = 20;
+	static final int COUNT_OFFSET = 24;
+	static final int INDEX_OFFSET = 32;
+	static final int INDEX_COUNT_OFFSET = 40;
+	static final int WALL_CLOCK_OFFSET = 48;
+	static final int DESCRIPTORS_OFFSET = 64;
+
+	static final int INT32 = 0;
+	static final int FLOAT64 = 1;
+
+	// columns of a record, in the order of the record
+	static final String[] NAMES = { "x", "y", "xCOM", "yCOM", "relHead", "pressure", "pointerID", "eventType", "identity",
+			"elapDistTot", "bodySpeed", "relDist", "endTime" };
+	static final int[] TYPES = { INT32, INT32, FLOAT64, FLOAT64, FLOAT64, INT32, INT32, INT32, INT32,
+			FLOAT64, FLOAT64, FLOAT64, FLOAT64 };
+	static final int[] OFFSETS = new int[NAMES.length];
+	static final int RECORD_SIZE;
+	static {
+		int offset = 0;
+		for ( int i = 0; i < NAMES.length; ++i ) {
+			OFFSETS[i] = offset;
+			offset += size( TYPES[i] );
+		}
+		RECORD_SIZE = offset;
+	}
+
+	// columns of the text sesFile, in the order of the text layout (read by PolyTouch_startWrap.m)
+	static final String[] TEXT_NAMES = { "x", "y", "xCOM", "yCOM", "relHead", "pressure", "pointerID", "eventType",
+			"elapDistTot", "bodySpeed", "relDist", "endTime", "identity" };
+
+	static final String TIME = "endTime"; // time column of the index, in ns, not decreasing
+
+	static int size( int type ) {
+		return type == FLOAT64 ? 8 : 4;
+	}
+}
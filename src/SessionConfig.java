@@ -0,0 +1,81 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// SESSION CONFIG - session variables of one session, read once from a session file (format of sesFileStart.txt, one variable per
+// line: animalID, protocolID, sessionID, sessionDur, targetZoneX, targetZoneY, targetZoneRad, pixelconv, toneAmp, toneFreq, toneDur,
+// toneFs, tonePeriod) and handed to every module of the Session, instead of re-reading sesFileStart in static initialisers.
+class SessionConfig {
+	static final String DIRECTORY = "C:\\Users\\Public/"; // directory of sesFileStart.txt and of all output files
+
+	final int animalID, protocolID, sessionID, sessionDur;
+	final double targetZoneX, targetZoneY; // centre target zone (in pixels)
+	final double targetZoneRad; // radius target zone (in cm)
+	final double pixelconv; // pixel-to-cm-conversion factor
+	final double toneAmp, toneFreq, toneDur, toneFs, tonePeriod;
+
+	SessionConfig( String[] readParams ) {
+		if ( readParams.length < 13 )
+			throw new IllegalArgumentException( "Invalid session file: " + readParams.length + " of 13 session variables" );
+		try {
+			animalID = Integer.parseInt( readParams[0].trim() );
+			protocolID = Integer.parseInt( readParams[1].trim() );
+			sessionID = Integer.parseInt( readParams[2].trim() );
+			sessionDur = Integer.parseInt( readParams[3].trim() );
+			targetZoneX = Double.parseDouble( readParams[4] );
+			targetZoneY = Double.parseDouble( readParams[5] );
+			targetZoneRad = Double.parseDouble( readParams[6] );
+			pixelconv = Double.parseDouble( readParams[7] );
+			toneAmp = Double.parseDouble( readParams[8] );
+			toneFreq = Double.parseDouble( readParams[9] );
+			toneDur = Double.parseDouble( readParams[10] );
+			toneFs = Double.parseDouble( readParams[11] );
+			tonePeriod = Double.parseDouble( readParams[12] );
+		} catch ( NumberFormatException e ) {
+			throw new IllegalArgumentException( "Invalid session file: " + e.getMessage() );
+		}
+	}
+
+	static SessionConfig read( File file ) throws IOException {
+		ArrayList< String > list = new ArrayList< String >();
+		BufferedReader in = new BufferedReader( new FileReader( file ) );
+		try {
+			String str;
+			while ( ( str = in.readLine() ) != null )
+				list.add( str );
+		} finally {
+			in.close();
+		}
+		return new SessionConfig( list.toArray( new String[0] ) );
+	}
+
+	// session of C:\Users\Public/sesFileStart.txt
+	static SessionConfig forSession() throws IOException {
+		return read( new File( DIRECTORY + "sesFileStart.txt" ) );
+	}
+
+	// A?P?S? tag of the output files
+	String tag() {
+		return "A" + animalID + "P" + protocolID + "S" + sessionID;
+	}
+
+	// output file of this session, e.g. file( "sesFile", ".txt" ) = C:\Users\Public/sesFile_A1P1S2.txt
+	File file( String name, String extension ) {
+		return new File( DIRECTORY + name + "_" + tag() + extension );
+	}
+
+	// session variables that can be used as values in FeedbackRules
+	HashMap< String, Double > symbols() {
+		HashMap< String, Double > SYMBOLS = new HashMap< String, Double >();
+		SYMBOLS.put( "sessionDur", (double) sessionDur );
+		SYMBOLS.put( "targetZoneX", targetZoneX );
+		SYMBOLS.put( "targetZoneY", targetZoneY );
+		SYMBOLS.put( "targetZoneRad", targetZoneRad );
+		SYMBOLS.put( "toneFreq", toneFreq );
+		SYMBOLS.put( "toneDur", toneDur );
+		return SYMBOLS;
+	}
+}
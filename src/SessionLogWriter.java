@@ -0,0 +1,294 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// SESSION LOG WRITER - keeps one channel open per output file and writes records on a dedicated thread.
+// Records are copied into a bounded byte ring; the writer thread commits them in groups once FLUSH_BYTES are pending
+// or the oldest pending record is FLUSH_MS old. Producers only block if the ring is full (nothing is ever dropped).
+//
+// Durability policy (system property polytouch.log.durability):
+// - ON_CLOSE: group commits are handed to the operating system, the file is forced to disk when the session ends (default)
+// - ON_COMMIT: every group commit is forced to disk before the next one starts
+class SessionLogWriter {
+	enum Durability { ON_CLOSE, ON_COMMIT }
+
+	private static final int RING_SIZE = Integer.getInteger( "polytouch.log.ringBytes", 1 << 20 );
+	private static final int FLUSH_BYTES = Integer.getInteger( "polytouch.log.flushBytes", 64 * 1024 );
+	private static final long FLUSH_MS = Long.getLong( "polytouch.log.flushMs", 100 );
+	private static final Durability DURABILITY = Durability.valueOf( System.getProperty( "polytouch.log.durability", "ON_CLOSE" ) );
+
+	static final byte[] NEWLINE = System.lineSeparator().getBytes();
+
+	// all writers that are still open, closed by the shutdown hook so that no tail records are lost on System.exit()
+	private static final ArrayList< SessionLogWriter > OPEN = new ArrayList< SessionLogWriter >();
+	// tasks run by the shutdown hook before the writers are closed (Session.stop(): stop the input, drain the engine, close its writers);
+	// the JVM runs its hooks concurrently, so there is only this one hook and the order is fixed here
+	private static final ArrayList< Runnable > SHUTDOWN_TASKS = new ArrayList< Runnable >();
+	static {
+		Runtime.getRuntime().addShutdownHook( new Thread( "PolyTouch-log-shutdown" ) {
+			public void run() {
+				Runnable[] TASKS;
+				synchronized ( SHUTDOWN_TASKS ) {
+					TASKS = SHUTDOWN_TASKS.toArray( new Runnable[0] );
+				}
+				for ( Runnable TASK : TASKS ) {
+					try {
+						TASK.run();
+					} catch ( RuntimeException e ) {
+						e.printStackTrace();
+					}
+				}
+				closeAll();
+			}
+		} );
+	}
+
+	private final File file;
+	private final FileChannel CHANNEL;
+	private final Thread WRITER;
+	private final byte[] RING;
+	private final ByteBuffer RINGBUFFER; // only used by the writer thread
+	private final ReentrantLock LOCK = new ReentrantLock();
+	private final Condition NOTEMPTY = LOCK.newCondition();
+	private final Condition NOTFULL = LOCK.newCondition();
+
+	// ring positions are monotonically increasing byte counts, index = position % RING.length
+	private long writePos = 0; // next byte produced
+	private long readPos = 0; // next byte to be committed
+	private long oldestPendingNs = 0; // time at which the oldest uncommitted record was appended
+	private long commitPos = 0; // end of the group the writer thread is committing (writePos when it took the group)
+	private long nextPendingNs = 0; // time at which the first record after that group was appended
+	private boolean closed = false;
+	private IOException failure = null;
+
+	private SessionLogWriter( File file ) throws IOException {
+		this.file = file;
+		CHANNEL = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND );
+		RING = new byte[RING_SIZE];
+		RINGBUFFER = ByteBuffer.wrap( RING );
+		WRITER = new Thread( "PolyTouch-log-" + file.getName() ) {
+			public void run() {
+				writeLoop();
+			}
+		};
+		WRITER.setDaemon( true );
+		WRITER.start();
+	}
+
+	// Opens (appends to) the given file. Records are written until close() is called or the JVM shuts down.
+	static SessionLogWriter open( File file ) throws IOException {
+		SessionLogWriter LOG = new SessionLogWriter( file );
+		synchronized ( OPEN ) {
+			OPEN.add( LOG );
+		}
+		return LOG;
+	}
+
+	// Runs the task when the JVM exits, before the open writers are closed (until it is removed).
+	static void addShutdownTask( Runnable TASK ) {
+		synchronized ( SHUTDOWN_TASKS ) {
+			SHUTDOWN_TASKS.add( TASK );
+		}
+	}
+
+	static void removeShutdownTask( Runnable TASK ) {
+		synchronized ( SHUTDOWN_TASKS ) {
+			SHUTDOWN_TASKS.remove( TASK );
+		}
+	}
+
+	static void closeAll() {
+		SessionLogWriter[] LOGS;
+		synchronized ( OPEN ) {
+			LOGS = OPEN.toArray( new SessionLogWriter[0] );
+		}
+		for ( SessionLogWriter LOG : LOGS )
+			LOG.close();
+	}
+
+	// bytes appended but not yet written, over all open writers (SessionMetrics)
+	static long pendingBytes() {
+		SessionLogWriter[] LOGS;
+		synchronized ( OPEN ) {
+			LOGS = OPEN.toArray( new SessionLogWriter[0] );
+		}
+		long pending = 0;
+		for ( SessionLogWriter LOG : LOGS ) {
+			LOG.LOCK.lock();
+			try {
+				pending += LOG.writePos - LOG.readPos;
+			} finally {
+				LOG.LOCK.unlock();
+			}
+		}
+		return pending;
+	}
+
+	// Appends bytes [off, off+len) as one record; the caller is responsible for the line terminator.
+	public void append( byte[] src, int off, int len ) {
+		if ( len > RING.length )
+			throw new IllegalArgumentException( "Record of " + len + " bytes exceeds log ring size " + RING.length );
+		LOCK.lock();
+		try {
+			if ( !awaitSpace( len ) )
+				return;
+			int i = (int) (writePos % RING.length);
+			int first = Math.min( len, RING.length - i );
+			System.arraycopy( src, off, RING, i, first );
+			System.arraycopy( src, off + first, RING, 0, len - first );
+			committed( len );
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	// Appends an ASCII line followed by the platform line terminator.
+	public void appendLine( String line ) {
+		int len = line.length() + NEWLINE.length;
+		if ( len > RING.length )
+			throw new IllegalArgumentException( "Record of " + len + " bytes exceeds log ring size " + RING.length );
+		LOCK.lock();
+		try {
+			if ( !awaitSpace( len ) )
+				return;
+			for ( int c = 0; c < line.length(); ++c )
+				RING[(int) ((writePos + c) % RING.length)] = (byte) line.charAt( c );
+			for ( int c = 0; c < NEWLINE.length; ++c )
+				RING[(int) ((writePos + line.length() + c) % RING.length)] = NEWLINE[c];
+			committed( len );
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	// must hold LOCK; returns false if the writer has been closed
+	private boolean awaitSpace( int len ) {
+		while ( !closed && writePos + len - readPos > RING.length )
+			NOTFULL.awaitUninterruptibly();
+		if ( closed ) {
+			System.out.println( "Session log " + file.getName() + " is closed, record dropped" );
+			return false;
+		}
+		return true;
+	}
+
+	// must hold LOCK; the writer thread is woken when the ring is no longer empty (it then waits until the record is FLUSH_MS old)
+	// and when FLUSH_BYTES are pending
+	private void committed( int len ) {
+		boolean empty = writePos == readPos;
+		if ( empty )
+			oldestPendingNs = System.nanoTime();
+		else if ( writePos == commitPos )
+			nextPendingNs = System.nanoTime(); // oldest record once the group in progress is committed
+		writePos += len;
+		if ( empty || writePos - readPos >= FLUSH_BYTES )
+			NOTEMPTY.signal();
+	}
+
+	private void writeLoop() {
+		try {
+			while ( true ) {
+				long from, to, oldestNs;
+				boolean last;
+				LOCK.lock();
+				try {
+					// group commit: wait until enough bytes are pending, the oldest record is due or the log is closed
+					while ( !closed ) {
+						long pending = writePos - readPos;
+						long waitNs = pending == 0 ? TimeUnit.MILLISECONDS.toNanos( FLUSH_MS )
+								: oldestPendingNs + TimeUnit.MILLISECONDS.toNanos( FLUSH_MS ) - System.nanoTime();
+						if ( pending >= FLUSH_BYTES || ( pending > 0 && waitNs <= 0 ) )
+							break;
+						NOTEMPTY.awaitNanos( waitNs );
+					}
+					from = readPos;
+					to = writePos;
+					commitPos = to;
+					oldestNs = oldestPendingNs;
+					last = closed;
+				} finally {
+					LOCK.unlock();
+				}
+
+				// write outside the lock; producers only touch the free part of the ring
+				writeRange( from, to );
+				if ( DURABILITY == Durability.ON_COMMIT && to > from )
+					CHANNEL.force( false );
+				if ( to > from ) {
+					SessionMetrics.LOG_BYTES.add( to - from );
+					SessionMetrics.LOG_FLUSH.record( System.nanoTime() - oldestNs );
+				}
+
+				LOCK.lock();
+				try {
+					readPos = to;
+					if ( writePos > readPos && to > from )
+						oldestPendingNs = nextPendingNs; // records appended while the group was written
+					NOTFULL.signalAll();
+				} finally {
+					LOCK.unlock();
+				}
+				if ( last ) // no records are accepted after close, so everything has been written
+					break;
+			}
+			CHANNEL.force( false );
+		} catch ( IOException e ) {
+			e.printStackTrace();
+			LOCK.lock();
+			try {
+				failure = e;
+				closed = true;
+				NOTFULL.signalAll();
+			} finally {
+				LOCK.unlock();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				CHANNEL.close();
+			} catch ( IOException e ) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void writeRange( long from, long to ) throws IOException {
+		while ( from < to ) {
+			int i = (int) (from % RING.length);
+			int len = (int) Math.min( to - from, RING.length - i );
+			RINGBUFFER.limit( i + len ).position( i );
+			while ( RINGBUFFER.hasRemaining() )
+				CHANNEL.write( RINGBUFFER );
+			from += len;
+		}
+	}
+
+	// Stops accepting records, commits everything that is pending and closes the channel.
+	public void close() {
+		LOCK.lock();
+		try {
+			closed = true;
+			NOTEMPTY.signal();
+			NOTFULL.signalAll();
+		} finally {
+			LOCK.unlock();
+		}
+		try {
+			WRITER.join();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized ( OPEN ) {
+			OPEN.remove( this );
+		}
+		if ( failure != null )
+			System.out.println( "Session log " + file.getName() + " failed: " + failure.getMessage() );
+	}
+}
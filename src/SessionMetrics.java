@@ -0,0 +1,282 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// SESSION METRICS - operational metrics of the live pipeline, exposed as MBean PolyTouch:type=Session (SessionMetricsMBean) while a
+// session runs, so that a rig can be watched from JConsole/VisualVM and alerts can be set on its attributes.
+// The hot paths only increment the static LongAdder counters below (striped, no shared cache line between the input callback, the
+// tracking thread and the log writers); like the LatencyTrace histograms they are process wide and reset when a Session starts.
+// Gauges (queue depth, contacts, underruns) are read when JMX asks for them. A sampler thread derives the rates every
+// polytouch.jmx.interval ms (1000) and the GC time: total, overlap (GC time in intervals in which input events arrived, i.e. pauses
+// that could delay tracking) and fraction of the last interval. -Dpolytouch.jmx=false disables the MBean.
+class SessionMetrics implements SessionMetricsMBean {
+	static final boolean ENABLED = Boolean.parseBoolean( System.getProperty( "polytouch.jmx", "true" ) );
+	static final long INTERVAL_MS = Long.getLong( "polytouch.jmx.interval", 1000 );
+	static final String NAME = "PolyTouch:type=Session";
+
+	// input events by event type (1 drag, 2 hover, 3 down, 4 up, 5/6 button, 7/8 in/out of range; 0: other)
+	static final LongAdder[] EVENTS = new LongAdder[9];
+	static {
+		for ( int i = 0; i < EVENTS.length; ++i )
+			EVENTS[i] = new LongAdder();
+	}
+	static final LongAdder FRAMES = new LongAdder();
+	static final LongAdder FEEDBACK_EVALUATIONS = new LongAdder();
+	static final LongAdder FEEDBACK_TRIGGERS = new LongAdder();
+	static final LongAdder LOG_BYTES = new LongAdder();
+	static final LatencyHistogram LOG_FLUSH = new LatencyHistogram(); // age of the oldest record of a group commit when it is written
+
+	// start of a session
+	static void reset() {
+		for ( LongAdder A : EVENTS )
+			A.reset();
+		FRAMES.reset();
+		FEEDBACK_EVALUATIONS.reset();
+		FEEDBACK_TRIGGERS.reset();
+		LOG_BYTES.reset();
+		LOG_FLUSH.reset();
+	}
+
+	// count an input event (callback thread of the input source)
+	static void event( int eventType ) {
+		EVENTS[eventType > 0 && eventType < EVENTS.length ? eventType : 0].increment();
+	}
+
+	private final String tag;
+	private final TrackingEngine ENGINE;
+	private final long startNs = System.nanoTime();
+
+	// sampler state and rates of the last interval
+	private Thread THREAD;
+	private volatile boolean running = false;
+	private final long[] LAST_EVENTS = new long[EVENTS.length];
+	private long lastFrames, lastEvaluations, lastLogBytes, lastGcMs, lastNs;
+	private final long gcCount0, gcMs0;
+	private volatile double[] EVENT_RATES = new double[EVENTS.length];
+	private volatile double frameRate, evaluationRate, logByteRate, gcFraction;
+	private volatile long gcOverlapMs = 0;
+
+	private SessionMetrics( String tag, TrackingEngine ENGINE ) {
+		this.tag = tag;
+		this.ENGINE = ENGINE;
+		gcCount0 = gcCount();
+		gcMs0 = gcTime();
+		lastGcMs = gcMs0;
+		lastNs = startNs;
+	}
+
+	// register the MBean of a started session (replaces the one of a previous session), null if disabled or not possible
+	static SessionMetrics register( String tag, TrackingEngine ENGINE ) {
+		if ( !ENABLED )
+			return null;
+		SessionMetrics METRICS = new SessionMetrics( tag, ENGINE );
+		try {
+			MBeanServer SERVER = ManagementFactory.getPlatformMBeanServer();
+			ObjectName NAME = new ObjectName( SessionMetrics.NAME );
+			if ( SERVER.isRegistered( NAME ) )
+				SERVER.unregisterMBean( NAME );
+			SERVER.registerMBean( METRICS, NAME );
+		} catch ( Exception e ) {
+			System.out.println( "Session metrics not available: " + e.getMessage() );
+			return null;
+		}
+		METRICS.start();
+		return METRICS;
+	}
+
+	// stop the sampler and remove the MBean
+	void unregister() {
+		running = false;
+		if ( THREAD != null )
+			THREAD.interrupt();
+		try {
+			MBeanServer SERVER = ManagementFactory.getPlatformMBeanServer();
+			ObjectName NAME = new ObjectName( SessionMetrics.NAME );
+			if ( SERVER.isRegistered( NAME ) )
+				SERVER.unregisterMBean( NAME );
+		} catch ( Exception e ) {
+			// another session has registered its metrics in the meantime
+		}
+	}
+
+	private void start() {
+		running = true;
+		THREAD = new Thread( "PolyTouch-metrics" ) {
+			public void run() {
+				while ( running ) {
+					try {
+						Thread.sleep( INTERVAL_MS );
+					} catch ( InterruptedException e ) {
+						return;
+					}
+					sample();
+				}
+			}
+		};
+		THREAD.setDaemon( true );
+		THREAD.start();
+	}
+
+	// rates of the interval since the last sample (sampler thread)
+	private void sample() {
+		long now = System.nanoTime();
+		double seconds = ( now - lastNs ) / 1e9;
+		lastNs = now;
+		double[] RATES = new double[EVENTS.length];
+		long events = 0;
+		for ( int i = 0; i < EVENTS.length; ++i ) {
+			long count = EVENTS[i].sum();
+			RATES[i] = ( count - LAST_EVENTS[i] ) / seconds;
+			events += count - LAST_EVENTS[i];
+			LAST_EVENTS[i] = count;
+		}
+		EVENT_RATES = RATES;
+		long frames = FRAMES.sum(), evaluations = FEEDBACK_EVALUATIONS.sum(), logBytes = LOG_BYTES.sum();
+		frameRate = ( frames - lastFrames ) / seconds;
+		evaluationRate = ( evaluations - lastEvaluations ) / seconds;
+		logByteRate = ( logBytes - lastLogBytes ) / seconds;
+		lastFrames = frames;
+		lastEvaluations = evaluations;
+		lastLogBytes = logBytes;
+		long gcMs = gcTime();
+		gcFraction = ( gcMs - lastGcMs ) / 1000.0 / seconds;
+		if ( events > 0 )
+			gcOverlapMs += gcMs - lastGcMs;
+		lastGcMs = gcMs;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for ( GarbageCollectorMXBean GC : ManagementFactory.getGarbageCollectorMXBeans() )
+			count += Math.max( 0, GC.getCollectionCount() );
+		return count;
+	}
+
+	private static long gcTime() {
+		long ms = 0;
+		for ( GarbageCollectorMXBean GC : ManagementFactory.getGarbageCollectorMXBeans() )
+			ms += Math.max( 0, GC.getCollectionTime() );
+		return ms;
+	}
+
+	// --- SessionMetricsMBean ---
+	public String getSession() {
+		return tag;
+	}
+
+	public double getUptimeSeconds() {
+		return ( System.nanoTime() - startNs ) / 1e9;
+	}
+
+	public double getDragEventsPerSecond() {
+		return EVENT_RATES[1];
+	}
+
+	public double getHoverEventsPerSecond() {
+		return EVENT_RATES[2];
+	}
+
+	public double getDownEventsPerSecond() {
+		return EVENT_RATES[3];
+	}
+
+	public double getUpEventsPerSecond() {
+		return EVENT_RATES[4];
+	}
+
+	public double getRangeEventsPerSecond() {
+		double[] RATES = EVENT_RATES;
+		return RATES[7] + RATES[8];
+	}
+
+	public double getButtonEventsPerSecond() {
+		double[] RATES = EVENT_RATES;
+		return RATES[5] + RATES[6];
+	}
+
+	public long getEvents() {
+		long events = 0;
+		for ( LongAdder A : EVENTS )
+			events += A.sum();
+		return events;
+	}
+
+	public double getFramesPerSecond() {
+		return frameRate;
+	}
+
+	public int getActiveContacts() {
+		return ENGINE.contacts();
+	}
+
+	public long getContactOverflow() {
+		return ENGINE.contactOverflow();
+	}
+
+	public int getQueueDepth() {
+		return ENGINE.queueDepth();
+	}
+
+	public long getDroppedEvents() {
+		return ENGINE.dropped();
+	}
+
+	public long getLogPendingBytes() {
+		return SessionLogWriter.pendingBytes();
+	}
+
+	public double getLogBytesPerSecond() {
+		return logByteRate;
+	}
+
+	public long getLogBytes() {
+		return LOG_BYTES.sum();
+	}
+
+	public double getLogFlushLatencyMeanMs() {
+		return LOG_FLUSH.mean() / 1e6;
+	}
+
+	public double getLogFlushLatencyMaxMs() {
+		return LOG_FLUSH.max() / 1e6;
+	}
+
+	public double getFeedbackEvaluationsPerSecond() {
+		return evaluationRate;
+	}
+
+	public long getFeedbackTriggers() {
+		return FEEDBACK_TRIGGERS.sum();
+	}
+
+	public long getAudioUnderruns() {
+		AudioEngine AUDIO = LatencyTrace.AUDIO;
+		return AUDIO != null ? AUDIO.underruns() : 0;
+	}
+
+	public double getIngressToComputedP99Us() {
+		return LatencyTrace.INGRESS_TO_COMPUTED.percentile( 0.99 ) / 1e3;
+	}
+
+	public double getIngressToAudioP99Us() {
+		return LatencyTrace.INGRESS_TO_AUDIO.percentile( 0.99 ) / 1e3;
+	}
+
+	public long getGcCount() {
+		return gcCount() - gcCount0;
+	}
+
+	public long getGcTimeMs() {
+		return gcTime() - gcMs0;
+	}
+
+	public long getGcOverlapMs() {
+		return gcOverlapMs;
+	}
+
+	public double getGcFraction() {
+		return gcFraction;
+	}
+}
@@ -0,0 +1,64 @@
+// SESSION METRICS MBEAN - attributes of the running session in JConsole/VisualVM (PolyTouch:type=Session), see SessionMetrics.
+// Rates are per second over the last sampling interval, counts since the start of the session.
+public interface SessionMetricsMBean {
+	String getSession();
+
+	double getUptimeSeconds();
+
+	// input events received by the tracking engine, per event type
+	double getDragEventsPerSecond();
+
+	double getHoverEventsPerSecond();
+
+	double getDownEventsPerSecond();
+
+	double getUpEventsPerSecond();
+
+	double getRangeEventsPerSecond();
+
+	double getButtonEventsPerSecond();
+
+	long getEvents();
+
+	// frames (kinematic updates) and contacts
+	double getFramesPerSecond();
+
+	int getActiveContacts();
+
+	long getContactOverflow();
+
+	// input queue and session logs
+	int getQueueDepth();
+
+	long getDroppedEvents();
+
+	long getLogPendingBytes();
+
+	double getLogBytesPerSecond();
+
+	long getLogBytes();
+
+	double getLogFlushLatencyMeanMs();
+
+	double getLogFlushLatencyMaxMs();
+
+	// feedback
+	double getFeedbackEvaluationsPerSecond();
+
+	long getFeedbackTriggers();
+
+	long getAudioUnderruns();
+
+	double getIngressToComputedP99Us();
+
+	double getIngressToAudioP99Us();
+
+	// garbage collection during the session
+	long getGcCount();
+
+	long getGcTimeMs();
+
+	long getGcOverlapMs();
+
+	double getGcFraction();
+}
@@ -0,0 +1,49 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+/** SESSION RUNNER - runs a queue of sessions back-to-back in one JVM, so that the JIT-compiled tracking and audio code (and the UI
+ *  frame and touch input) are warm from the second session on instead of starting a new JVM per session.
+ *
+ *  Run: java -cp PolyTouch.jar SessionRunner sesFileStart_1.txt sesFileStart_2.txt ...
+ *  Every argument is a session file in the format of sesFileStart.txt (no argument: C:\Users\Public/sesFileStart.txt); the sessions
+ *  run in this order, each with its own config, clock and output files (A?P?S? of the session file). With -Dpolytouch.runner.wait=true
+ *  the runner waits for Enter before every session after the first (e.g. to change the animal).
+ */
+public class SessionRunner {
+	static final boolean WAIT = Boolean.getBoolean( "polytouch.runner.wait" );
+
+	public static void main( String[] arg ) throws Exception {
+		// read all session files first, so that an invalid file is reported before the first session starts
+		ArrayList< SessionConfig > QUEUE = new ArrayList< SessionConfig >();
+		try {
+			if ( arg.length == 0 ) {
+				QUEUE.add( SessionConfig.forSession() );
+			}
+			for ( String file : arg ) {
+				QUEUE.add( SessionConfig.read( new File( file ) ) );
+			}
+		} catch ( IOException e ) {
+			System.out.println( e.getMessage() );
+			System.exit( 1 );
+		} catch ( IllegalArgumentException e ) {
+			System.out.println( e.getMessage() );
+			System.exit( 1 );
+		}
+
+		PolyTouch POLYTOUCH = new PolyTouch();
+		BufferedReader CONSOLE = new BufferedReader( new InputStreamReader( System.in ) );
+		for ( int i = 0; i < QUEUE.size(); ++i ) {
+			SessionConfig CONFIG = QUEUE.get( i );
+			if ( WAIT && i > 0 ) {
+				System.out.println( "Press Enter to start session " + CONFIG.tag() + "..." );
+				CONSOLE.readLine();
+			}
+			System.out.println( "Session " + ( i + 1 ) + " of " + QUEUE.size() + ": " + CONFIG.tag() );
+			POLYTOUCH.runSession( CONFIG );
+		}
+		System.exit( 0 );
+	}
+}
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+// SESSION SUMMARY - summary of the tracked samples of one session file, or of several files of the same animal, protocol and session
+// (merge). It uses the kinematics as logged by the TrackingEngine (Kinematics: elapDistTot, bodySpeed, relDist, eventType), so the
+// numbers are the ones the closed loop worked with. Time is attributed per animal (identity column) to the state of its previous
+// sample, as in OccupancyGrid; mouse samples (pointerID 1) are skipped.
+class SessionSummary {
+	static final double SPEED_BIN = 0.5; // cm/s
+	static final int SPEED_BINS = 201; // 0 - 100 cm/s (speeds are clipped at 100), last bin: above
+
+	final int animalID, protocolID, sessionID;
+	int files = 0;
+	long samples = 0;
+	double duration = 0; // s
+	double distance = 0; // cm, sum over animals
+	double timeInTarget = 0; // s
+	double sumFirstEntry = 0; // s, over the files with an entry
+	int entries = 0; // files with an entry
+	double mobileTime = 0, immobileTime = 0; // s
+	final long[] SPEED = new long[SPEED_BINS]; // samples per speed bin
+	double sumSpeed = 0;
+	long feedback = 0; // trigger time stamps in sesAudioFile
+	long stimuli = 0; // stimuli in sesStimFile
+
+	// per identity while a file is added (identity 0 .. length-1)
+	private double[] LAST_TIME = new double[0];
+	private double[] LAST_REL_DIST = new double[0];
+	private int[] LAST_EVENT = new int[0];
+	private double[] LAST_DIST = new double[0];
+	private double firstTime, lastTime, firstEntry;
+
+	SessionSummary( int animalID, int protocolID, int sessionID ) {
+		this.animalID = animalID;
+		this.protocolID = protocolID;
+		this.sessionID = sessionID;
+	}
+
+	long key() {
+		return key( animalID, protocolID, sessionID );
+	}
+
+	static long key( int animalID, int protocolID, int sessionID ) {
+		return ( (long) animalID << 42 ) | ( (long) protocolID << 21 ) | sessionID;
+	}
+
+	// --- one file: begin(), sample() per row, end() ---
+	void begin() {
+		LAST_TIME = new double[0];
+		LAST_REL_DIST = new double[0];
+		LAST_EVENT = new int[0];
+		LAST_DIST = new double[0];
+		firstTime = Double.NaN;
+		lastTime = Double.NaN;
+		firstEntry = Double.NaN;
+	}
+
+	void sample( int pointerID, int eventType, double elapDistTot, double bodySpeed, double relDist, double endTime, int identity,
+			double targetZoneRad ) {
+		if ( pointerID == 1 || identity < 0 ) // mouse
+			return;
+		if ( identity >= LAST_TIME.length ) {
+			int n = LAST_TIME.length;
+			LAST_TIME = Arrays.copyOf( LAST_TIME, identity + 1 );
+			LAST_REL_DIST = Arrays.copyOf( LAST_REL_DIST, identity + 1 );
+			LAST_EVENT = Arrays.copyOf( LAST_EVENT, identity + 1 );
+			LAST_DIST = Arrays.copyOf( LAST_DIST, identity + 1 );
+			Arrays.fill( LAST_TIME, n, identity + 1, Double.NaN );
+		}
+		double t = endTime / 1e9;
+		double last = LAST_TIME[identity];
+		if ( t > last ) { // not NaN: the animal has a previous sample
+			double dt = t - last;
+			if ( LAST_REL_DIST[identity] < targetZoneRad )
+				timeInTarget += dt;
+			if ( LAST_EVENT[identity] == 0 )
+				immobileTime += dt;
+			else
+				mobileTime += dt;
+		}
+		LAST_TIME[identity] = t;
+		LAST_REL_DIST[identity] = relDist;
+		LAST_EVENT[identity] = eventType;
+		LAST_DIST[identity] = Math.max( LAST_DIST[identity], elapDistTot );
+
+		if ( Double.isNaN( firstTime ) )
+			firstTime = t;
+		lastTime = t;
+		if ( Double.isNaN( firstEntry ) && relDist < targetZoneRad )
+			firstEntry = t - firstTime;
+		if ( !Double.isNaN( bodySpeed ) ) {
+			SPEED[Math.min( SPEED_BINS - 1, Math.max( 0, (int) ( bodySpeed / SPEED_BIN ) ) )]++;
+			sumSpeed += bodySpeed;
+		}
+		samples++;
+	}
+
+	void end() {
+		files++;
+		if ( !Double.isNaN( firstTime ) )
+			duration += lastTime - firstTime;
+		for ( double d : LAST_DIST )
+			distance += d;
+		if ( !Double.isNaN( firstEntry ) ) {
+			sumFirstEntry += firstEntry;
+			entries++;
+		}
+		begin();
+	}
+
+	// add the files of S (same animal, protocol and session)
+	SessionSummary merge( SessionSummary S ) {
+		files += S.files;
+		samples += S.samples;
+		duration += S.duration;
+		distance += S.distance;
+		timeInTarget += S.timeInTarget;
+		sumFirstEntry += S.sumFirstEntry;
+		entries += S.entries;
+		mobileTime += S.mobileTime;
+		immobileTime += S.immobileTime;
+		for ( int i = 0; i < SPEED_BINS; ++i )
+			SPEED[i] += S.SPEED[i];
+		sumSpeed += S.sumSpeed;
+		feedback += S.feedback;
+		stimuli += S.stimuli;
+		return this;
+	}
+
+	long speedSamples() {
+		long total = 0;
+		for ( long c : SPEED )
+			total += c;
+		return total;
+	}
+
+	// speed below which a fraction q of the samples lies (upper edge of the bin)
+	double speedQuantile( double q ) {
+		long total = speedSamples();
+		if ( total == 0 )
+			return Double.NaN;
+		long rank = (long) Math.ceil( q * total );
+		long seen = 0;
+		for ( int i = 0; i < SPEED_BINS; ++i ) {
+			seen += SPEED[i];
+			if ( seen >= rank )
+				return ( i + 1 ) * SPEED_BIN;
+		}
+		return SPEED_BINS * SPEED_BIN;
+	}
+
+	static final String HEADER = "% animalID protocolID sessionID files samples duration(s) distance(cm) timeInTarget(s) firstEntry(s)"
+			+ " meanSpeed p50Speed p90Speed(cm/s) mobile immobile(fraction of time) feedback stimuli";
+
+	// one row of the summary table (firstEntry: mean over the files with an entry)
+	String row() {
+		double time = mobileTime + immobileTime;
+		return String.format( Locale.ROOT, "%d %d %d %d %d %.3f %.3f %.3f %.3f %.3f %.1f %.1f %.4f %.4f %d %d",
+				animalID, protocolID, sessionID, files, samples, duration, distance, timeInTarget,
+				entries > 0 ? sumFirstEntry / entries : Double.NaN, speedSamples() > 0 ? sumSpeed / speedSamples() : Double.NaN,
+				speedQuantile( 0.5 ), speedQuantile( 0.9 ), time > 0 ? mobileTime / time : Double.NaN,
+				time > 0 ? immobileTime / time : Double.NaN, feedback, stimuli );
+	}
+}
@@ -0,0 +1,243 @@
+// SIGNAL FILTER - one stage of the smoothing of a tracked signal (COM coordinate, speed, heading), updated once per sample in O(1)
+// time and without allocation. Selected per signal with a spec string (see parse()):
+//   ma:N                 moving average of the last N samples (ring buffer with running sum)
+//   ema:alpha            exponential moving average, alpha in (0,1] (1 = no smoothing)
+//   euro:minCutoff,beta  one-euro filter (Casiez et al. 2012): adaptive low-pass, cutoffs in Hz, less lag when the signal moves fast
+//   kalman:q,r           constant-velocity Kalman filter, q process noise (units/s^2)^2, r measurement noise (units^2)
+//   circular:N           circular mean of the last N angles in degrees (mean of unit vectors, correct across 0/360)
+// Every filter also estimates the rate of change of its output (velocity(), units/s), used to extrapolate the COM forward.
+abstract class SignalFilter {
+	// time of the previous sample and the output (s), for the default velocity estimate
+	private double lastT = Double.NaN, lastOut = Double.NaN;
+	private double velocity = 0;
+
+	// filter value measured at time t (s, not decreasing), returns the filtered value
+	final double filter( double value, double t ) {
+		double dt = Double.isNaN( lastT ) ? 0 : t - lastT;
+		double out = update( value, dt );
+		velocity = dt > 0 ? rate( out, lastOut, dt ) : velocity;
+		lastT = t;
+		lastOut = out;
+		return out;
+	}
+
+	// velocity of the output (units/s)
+	double velocity() {
+		return velocity;
+	}
+
+	// dt: time since the previous sample (s), 0 for the first sample
+	protected abstract double update( double value, double dt );
+
+	// velocity of the output, from the outputs of this and the previous sample
+	protected double rate( double out, double previous, double dt ) {
+		return ( out - previous ) / dt;
+	}
+
+	// filter of a spec string, null for "legacy" (the original fixed computation)
+	static SignalFilter parse( String spec ) {
+		if ( spec == null || spec.equals( "legacy" ) )
+			return null;
+		String[] T = spec.split( ":", 2 );
+		String[] P = T.length > 1 ? T[1].split( "," ) : new String[0];
+		try {
+			if ( T[0].equals( "ma" ) && P.length == 1 )
+				return new MovingAverage( Integer.parseInt( P[0] ) );
+			if ( T[0].equals( "ema" ) && P.length == 1 )
+				return new Exponential( Double.parseDouble( P[0] ) );
+			if ( T[0].equals( "euro" ) && ( P.length == 2 || P.length == 3 ) )
+				return new OneEuro( Double.parseDouble( P[0] ), Double.parseDouble( P[1] ), P.length == 3 ? Double.parseDouble( P[2] ) : 1 );
+			if ( T[0].equals( "kalman" ) && P.length == 2 )
+				return new Kalman( Double.parseDouble( P[0] ), Double.parseDouble( P[1] ) );
+			if ( T[0].equals( "circular" ) && P.length == 1 )
+				return new CircularMean( Integer.parseInt( P[0] ) );
+		} catch ( NumberFormatException e ) {
+			// reported below
+		}
+		throw new IllegalArgumentException( "Invalid filter: " + spec );
+	}
+
+	// --- moving average: ring buffer with a running sum (recomputed every 64 windows against rounding drift) ---
+	static final class MovingAverage extends SignalFilter {
+		private final double[] RING;
+		private int next = 0, size = 0, updates = 0;
+		private double sum = 0;
+
+		MovingAverage( int n ) {
+			if ( n < 1 )
+				throw new IllegalArgumentException( "Invalid filter: ma:" + n );
+			RING = new double[n];
+		}
+
+		protected double update( double value, double dt ) {
+			if ( size == RING.length )
+				sum -= RING[next];
+			else
+				size++;
+			RING[next] = value;
+			sum += value;
+			next = next + 1 == RING.length ? 0 : next + 1;
+			if ( ++updates == 64 * RING.length ) {
+				updates = 0;
+				sum = 0;
+				for ( int i = 0; i < size; ++i )
+					sum += RING[i];
+			}
+			return sum / size;
+		}
+	}
+
+	// --- exponential moving average ---
+	static final class Exponential extends SignalFilter {
+		private final double alpha;
+		private double state = Double.NaN;
+
+		Exponential( double alpha ) {
+			if ( !( alpha > 0 && alpha <= 1 ) )
+				throw new IllegalArgumentException( "Invalid filter: ema:" + alpha );
+			this.alpha = alpha;
+		}
+
+		protected double update( double value, double dt ) {
+			state = Double.isNaN( state ) ? value : state + alpha * ( value - state );
+			return state;
+		}
+	}
+
+	// --- one-euro filter: low-pass whose cutoff rises with the (low-pass filtered) speed of the signal ---
+	static final class OneEuro extends SignalFilter {
+		private final double minCutoff, beta, dCutoff; // Hz, s/unit, Hz
+		private double state = Double.NaN, derivative = 0;
+
+		OneEuro( double minCutoff, double beta, double dCutoff ) {
+			if ( !( minCutoff > 0 && beta >= 0 && dCutoff > 0 ) )
+				throw new IllegalArgumentException( "Invalid filter: euro:" + minCutoff + "," + beta + "," + dCutoff );
+			this.minCutoff = minCutoff;
+			this.beta = beta;
+			this.dCutoff = dCutoff;
+		}
+
+		private static double alpha( double cutoff, double dt ) {
+			double tau = 1 / ( 2 * Math.PI * cutoff );
+			return 1 / ( 1 + tau / dt );
+		}
+
+		protected double update( double value, double dt ) {
+			if ( Double.isNaN( state ) || dt <= 0 ) {
+				if ( Double.isNaN( state ) )
+					state = value;
+				return state;
+			}
+			derivative += alpha( dCutoff, dt ) * ( ( value - state ) / dt - derivative );
+			double cutoff = minCutoff + beta * Math.abs( derivative );
+			state += alpha( cutoff, dt ) * ( value - state );
+			return state;
+		}
+
+		protected double rate( double out, double previous, double dt ) {
+			return derivative;
+		}
+	}
+
+	// --- constant-velocity Kalman filter (state: position, velocity; measurement: position) ---
+	static final class Kalman extends SignalFilter {
+		private final double q, r;
+		private double x = Double.NaN, v = 0;
+		private double p00, p01, p11; // covariance
+
+		Kalman( double q, double r ) {
+			if ( !( q > 0 && r > 0 ) )
+				throw new IllegalArgumentException( "Invalid filter: kalman:" + q + "," + r );
+			this.q = q;
+			this.r = r;
+		}
+
+		protected double update( double z, double dt ) {
+			if ( Double.isNaN( x ) ) {
+				x = z;
+				v = 0;
+				p00 = r;
+				p01 = 0;
+				p11 = 1e6 * r; // velocity unknown
+				return x;
+			}
+			if ( dt > 0 ) {
+				// predict: x += v dt, P = F P F' + Q (white acceleration noise)
+				x += v * dt;
+				double dt2 = dt * dt, dt3 = dt2 * dt;
+				p00 += dt * ( 2 * p01 + dt * p11 ) + q * dt3 * dt / 4;
+				p01 += dt * p11 + q * dt3 / 2;
+				p11 += q * dt2;
+			}
+			// update with the measured position
+			double s = p00 + r;
+			double k0 = p00 / s, k1 = p01 / s;
+			double y = z - x;
+			x += k0 * y;
+			v += k1 * y;
+			p11 -= k1 * p01;
+			p01 -= k0 * p01;
+			p00 -= k0 * p00;
+			return x;
+		}
+
+		protected double rate( double out, double previous, double dt ) {
+			return v;
+		}
+	}
+
+	// --- circular mean of angles (deg): running sums of the unit vectors of the last N angles, result in [0,360) ---
+	static final class CircularMean extends SignalFilter {
+		private final double[] SIN, COS;
+		private int next = 0, size = 0, updates = 0;
+		private double sumSin = 0, sumCos = 0;
+		private double last = 0;
+
+		CircularMean( int n ) {
+			if ( n < 1 )
+				throw new IllegalArgumentException( "Invalid filter: circular:" + n );
+			SIN = new double[n];
+			COS = new double[n];
+		}
+
+		protected double update( double degrees, double dt ) {
+			double rad = Math.toRadians( degrees );
+			if ( size == SIN.length ) {
+				sumSin -= SIN[next];
+				sumCos -= COS[next];
+			} else {
+				size++;
+			}
+			SIN[next] = Math.sin( rad );
+			COS[next] = Math.cos( rad );
+			sumSin += SIN[next];
+			sumCos += COS[next];
+			next = next + 1 == SIN.length ? 0 : next + 1;
+			if ( ++updates == 64 * SIN.length ) {
+				updates = 0;
+				sumSin = 0;
+				sumCos = 0;
+				for ( int i = 0; i < size; ++i ) {
+					sumSin += SIN[i];
+					sumCos += COS[i];
+				}
+			}
+			if ( sumSin * sumSin + sumCos * sumCos > 1e-18 ) { // undefined for opposite directions: keep the last mean
+				last = Math.toDegrees( Math.atan2( sumSin, sumCos ) );
+				if ( last < 0 )
+					last += 360;
+			}
+			return last;
+		}
+
+		// angular velocity (deg/s), the change of the mean taken the short way round
+		protected double rate( double out, double previous, double dt ) {
+			double d = out - previous;
+			if ( d > 180 )
+				d -= 360;
+			else if ( d <= -180 )
+				d += 360;
+			return d / dt;
+		}
+	}
+}
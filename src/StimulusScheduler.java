@@ -0,0 +1,67 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+// STIMULUS SCHEDULER - pseudo-random presentation of tones of 3 intensities (session 5 of protocol 1) at exact audio frames.
+// Replaces one java.util.Timer per stimulus: all onsets are computed when the session starts and handed to the AudioEngine
+// as frame positions (frame 0 = first frame played), so the onset of every stimulus is sample-accurate and does not depend
+// on thread scheduling.
+// - the stimuli are presented in the order of intRand (9 = 3x3 blocks, intRand.get(i) % 3 selects 39, 49 or 65 dB)
+// - the session is divided in one slot per stimulus; the onset is the slot start plus a random delay between delayMin and
+//   delayMax (as before: 30 s and tonePeriod - toneDur), limited to the slot so that every stimulus is presented
+// - for every stimulus the scheduled onset, the actual onset (device frame position) and the error are saved in sesStimFile
+class StimulusScheduler implements AudioEngine.OnsetListener {
+	private static final float[] GAINS = { 0.6f, 0.8f, 1f }; // 39 dB, 49 dB, 65 dB
+	private static final String[] LEVELS = { "39 dB", "49 dB", "65 dB" };
+
+	private final ArrayList< Integer > intRand;
+	private final AudioEngine.ScheduledTone[] TONES;
+	private final long startNs; // origin of the logged times (session clock)
+	private final SessionLogWriter STIMLOG;
+	private final TriggerSound FEEDBACK; // trigger time stamps of the onsets
+	private final SampleEncoder ENCODER = new SampleEncoder(); // engine thread only
+
+	StimulusScheduler( ArrayList< Integer > intRand, double sessionDur, double toneFreq, double toneDur, double tonePeriod,
+			double toneFs, Random RANDOM, long startNs, File stimFile, TriggerSound FEEDBACK ) throws IOException {
+		this.intRand = intRand;
+		this.FEEDBACK = FEEDBACK;
+		this.startNs = startNs;
+		double delayMin = 0.5 * 60; // minimum delay in sec
+		double delayMax = tonePeriod - toneDur; // maximum delay in sec
+		double slot = sessionDur / intRand.size();
+		long frames = (long) ( toneFs * toneDur ) + 1;
+
+		TONES = new AudioEngine.ScheduledTone[intRand.size()];
+		for ( int i = 0; i < TONES.length; ++i ) {
+			double delay = ( RANDOM.nextDouble() * ( delayMax - delayMin ) ) + delayMin;
+			delay = Math.max( 0, Math.min( delay, slot - toneDur ) );
+			long onsetFrame = Math.round( ( i * slot + delay ) * toneFs );
+			TONES[i] = new AudioEngine.ScheduledTone( i, GAINS[intRand.get( i ) % 3], toneFreq, onsetFrame, frames );
+		}
+		STIMLOG = SessionLogWriter.open( stimFile );
+	}
+
+	// schedule all stimuli on the audio engine
+	public void start( AudioEngine AUDIO ) {
+		for ( AudioEngine.ScheduledTone TONE : TONES )
+			System.out.println( String.format( Locale.ROOT, "Stimulus %d: %s at %.3f s", TONE.index + 1, LEVELS[intRand.get( TONE.index ) % 3],
+					TONE.onsetFrame / AUDIO.sampleRate() ) );
+		AUDIO.schedule( TONES, this );
+	}
+
+	// content: {stimulus, intRand, gain, scheduled onset, actual onset, error} (session time in ns, see SessionClock)
+	public void onset( AudioEngine.ScheduledTone TONE, long scheduledNs, long actualNs ) {
+		ENCODER.reset().putInt( TONE.index + 1 ).putInt( intRand.get( TONE.index ) ).putDouble( TONE.gain )
+				.putLong( scheduledNs - startNs ).putLong( actualNs - startNs ).putLong( actualNs - scheduledNs ).endLine();
+		STIMLOG.append( ENCODER.buffer(), 0, ENCODER.length() );
+		FEEDBACK.stimulusOnset( TONE.index + 1, intRand.get( TONE.index ), TONE.gain, scheduledNs, actualNs );
+		if ( TONE.index == TONES.length - 1 )
+			System.out.println( "All stimuli presented." );
+	}
+
+	public void close() {
+		STIMLOG.close();
+	}
+}
@@ -0,0 +1,72 @@
+import java.util.Random;
+
+// SYNTHETIC INPUT SOURCE - generates the contacts of a virtual animal that walks through the arena.
+// The body follows a correlated random walk with moving and immobile bouts and is reflected at the arena borders;
+// nContacts contacts (limbs first, then tail) are placed around the body and reported every frame at rateHz
+// (rateHz 0 generates frames as fast as possible). The session is generated for durationS seconds.
+class SyntheticInputSource extends ThreadedInputSource {
+	private static final int FIRST_POINTER_ID = 2; // pointerID 1 is the computer mouse
+	private static final double[] LIMB_X = { 15, 15, -15, -15 }; // limb offsets in body coordinates (pixels)
+	private static final double[] LIMB_Y = { 12, -12, 12, -12 };
+
+	private final double rateHz;
+	private final int nContacts;
+	private final double durationS;
+	private final int width, height;
+	private final Random RANDOM;
+
+	SyntheticInputSource( double rateHz, int nContacts, double durationS, int width, int height, long seed ) {
+		super( "synthetic" );
+		this.rateHz = rateHz;
+		this.nContacts = nContacts;
+		this.durationS = durationS;
+		this.width = width;
+		this.height = height;
+		this.RANDOM = new Random( seed );
+	}
+
+	protected void generate() {
+		double x = width / 2.0; double y = height / 2.0;
+		double heading = 0; double speed = 0; // pixels per frame
+		long frames = rateHz > 0 ? (long) ( durationS * rateHz ) : (long) ( durationS * 1000 );
+		long periodNs = rateHz > 0 ? (long) ( 1000000000 / rateHz ) : 0;
+		long wall0 = System.nanoTime();
+
+		for ( long frame = 0; frame < frames && running(); ++frame ) {
+			if ( periodNs > 0 )
+				waitUntil( wall0 + frame * periodNs );
+
+			// switch between moving and immobile bouts, turn smoothly while moving
+			if ( RANDOM.nextDouble() < 0.01 )
+				speed = speed > 0 ? 0 : 1 + 4 * RANDOM.nextDouble();
+			heading += 0.1 * RANDOM.nextGaussian();
+			x += speed * Math.cos( heading );
+			y += speed * Math.sin( heading );
+			if ( x < 0 || x >= width ) {
+				heading = Math.PI - heading;
+				x = Math.max( 0, Math.min( width - 1, x ) );
+			}
+			if ( y < 0 || y >= height ) {
+				heading = -heading;
+				y = Math.max( 0, Math.min( height - 1, y ) );
+			}
+
+			double cos = Math.cos( heading ); double sin = Math.sin( heading );
+			for ( int c = 0; c < nContacts; ++c ) {
+				double bx, by;
+				if ( c < LIMB_X.length ) {
+					bx = LIMB_X[c] + RANDOM.nextGaussian();
+					by = LIMB_Y[c] + RANDOM.nextGaussian();
+				} else { // tail contacts behind the body
+					bx = -25 - 8 * ( c - LIMB_X.length );
+					by = 2 * RANDOM.nextGaussian();
+				}
+				int cx = (int) Math.round( x + bx * cos - by * sin );
+				int cy = (int) Math.round( y + bx * sin + by * cos );
+				emitXY( DEVICE_TYPE_TOUCH, FIRST_POINTER_ID + c, EVENT_TYPE_DRAG, cx, cy, 100 + RANDOM.nextInt( 50 ) );
+			}
+		}
+		for ( int c = 0; c < nContacts; ++c )
+			emitPointer( DEVICE_TYPE_TOUCH, FIRST_POINTER_ID + c, EVENT_TYPE_UP );
+	}
+}
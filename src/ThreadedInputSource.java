@@ -0,0 +1,86 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import jwinpointer.JWinPointerReader.PointerEventListener;
+
+// THREADED INPUT SOURCE - base class for input sources that generate pointer events on their own thread
+// (ReplayInputSource, SyntheticInputSource). Events are delivered on that thread, like JWinPointer does on its callback thread.
+abstract class ThreadedInputSource implements PointerInputSource {
+	static final int DEVICE_TYPE_TOUCH = 2; // device type reported for generated contacts
+	static final int DEVICE_TYPE_MOUSE = 4; // device type of the mouse (pointerID 1), as reported by JWinPointer
+	static final int EVENT_TYPE_DRAG = 1;
+	static final int EVENT_TYPE_UP = 4;
+
+	private static final long SPIN_NS = 200000; // busy-wait the last 0.2 ms before an event is due
+
+	private final String name;
+	private final CopyOnWriteArrayList< PointerEventListener > LISTENERS = new CopyOnWriteArrayList< PointerEventListener >();
+	private Thread THREAD;
+	private volatile boolean running = false;
+	private volatile boolean finished = false;
+
+	ThreadedInputSource( String name ) {
+		this.name = name;
+	}
+
+	public void addPointerEventListener( PointerEventListener listener ) {
+		LISTENERS.add( listener );
+	}
+
+	public void removePointerEventListener( PointerEventListener listener ) {
+		LISTENERS.remove( listener );
+	}
+
+	public void start() {
+		running = true;
+		THREAD = new Thread( "PolyTouch-input-" + name ) {
+			public void run() {
+				try {
+					generate();
+				} catch ( Exception e ) {
+					e.printStackTrace();
+				} finally {
+					finished = true;
+					System.out.println( "Input source " + name + " finished" );
+				}
+			}
+		};
+		THREAD.setDaemon( true );
+		THREAD.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	protected boolean running() {
+		return running;
+	}
+
+	// generate events until running() is false or there are no more events
+	protected abstract void generate() throws Exception;
+
+	// wait until System.nanoTime() reaches dueNs: park while far away, spin for the last SPIN_NS
+	protected void waitUntil( long dueNs ) {
+		long remaining;
+		while ( running && ( remaining = dueNs - System.nanoTime() ) > 0 ) {
+			if ( remaining > SPIN_NS )
+				LockSupport.parkNanos( remaining - SPIN_NS );
+			else
+				Thread.yield();
+		}
+	}
+
+	protected void emitXY( int deviceType, int pointerID, int eventType, int x, int y, int pressure ) {
+		for ( PointerEventListener LISTENER : LISTENERS )
+			LISTENER.pointerXYEvent( deviceType, pointerID, eventType, false, x, y, pressure );
+	}
+
+	protected void emitPointer( int deviceType, int pointerID, int eventType ) {
+		for ( PointerEventListener LISTENER : LISTENERS )
+			LISTENER.pointerEvent( deviceType, pointerID, eventType, false );
+	}
+}
@@ -0,0 +1,227 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// TRACKING MODULE - performs motion tracking of single and multiple contact points retrieved using external library JWinPointer.jar
+// The contact points are stored in a preallocated table keyed on (deviceType, pointerID):
+// - contact variables are kept in primitive arrays, one slot per contact; slots of lost contacts are reused
+// - an open-addressing hash index (linear probing, backward-shift deletion) finds the slot of a contact in O(1)
+// - live slots are linked in order of detection, so contacts are iterated in a stable order (first(), next())
+// - snapshot() copies the contacts consistently from any other thread (optimistic read, no blocking of the tracking thread)
+// Mutations must be done by a single thread (the TrackingEngine).
+class TouchInfoArray {
+	static final int MAX_CONTACTS = Integer.getInteger( "polytouch.contacts.max", 256 );
+	private static final int EMPTY = -1;
+
+	// contact variables per slot
+	private final int[] deviceType = new int[MAX_CONTACTS];
+	private final int[] pointerID = new int[MAX_CONTACTS];
+	private final boolean[] inverted = new boolean[MAX_CONTACTS];
+	private final int[] x = new int[MAX_CONTACTS];
+	private final int[] y = new int[MAX_CONTACTS];
+	private final int[] pressure = new int[MAX_CONTACTS];
+
+	// order of detection (doubly linked list of live slots) and free slots (stack)
+	private final int[] prev = new int[MAX_CONTACTS];
+	private final int[] next = new int[MAX_CONTACTS];
+	private final int[] free = new int[MAX_CONTACTS];
+	private int nFree = MAX_CONTACTS;
+	private int head = EMPTY, tail = EMPTY;
+	private int size = 0;
+	private int touches = 0; // contacts other than the mouse (pointerID 1)
+	private long overflow = 0; // contacts ignored because the table was full
+
+	// hash index: key -> slot, at most half full
+	private final int MASK;
+	private final long[] keys;
+	private final int[] slots;
+
+	private final StampedLock LOCK = new StampedLock();
+
+	TouchInfoArray() {
+		int tableSize = Integer.highestOneBit( Math.max( 2, MAX_CONTACTS ) ) << 2;
+		MASK = tableSize - 1;
+		keys = new long[tableSize];
+		slots = new int[tableSize];
+		Arrays.fill( slots, EMPTY );
+		for ( int i = 0; i < MAX_CONTACTS; ++i )
+			free[i] = MAX_CONTACTS - 1 - i; // lowest slots are used first
+	}
+
+	private static long key( int deviceType, int pointerID ) {
+		return ( (long) deviceType << 32 ) | ( pointerID & 0xffffffffL );
+	}
+
+	private static int hash( long key ) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) ( h ^ ( h >>> 32 ) );
+	}
+
+	// returns index in the hash table of key, or of the empty position where it would be inserted
+	private int find( long key ) {
+		int i = hash( key ) & MASK;
+		while ( slots[i] != EMPTY && keys[i] != key )
+			i = ( i + 1 ) & MASK;
+		return i;
+	}
+
+	// slot of a contact, -1 if it is not in the table
+	public int slot( int deviceType, int pointerID ) {
+		return slots[find( key( deviceType, pointerID ) )];
+	}
+
+	// Finds and updates existing pointer info, or creates a pointer info if no existing one is found.
+	// Returns the slot of the contact, -1 if the table is full.
+	public int updatePointer( int deviceType, int pointerID, boolean inverted, int x, int y, int pressure ) {
+		long k = key( deviceType, pointerID );
+		int i = find( k );
+		long stamp = LOCK.writeLock();
+		try {
+			int slot = slots[i];
+			if ( slot == EMPTY ) {
+				if ( nFree == 0 ) {
+					overflow++;
+					return EMPTY;
+				}
+				slot = free[--nFree];
+				keys[i] = k;
+				slots[i] = slot;
+				this.deviceType[slot] = deviceType;
+				this.pointerID[slot] = pointerID;
+				// append to order of detection
+				prev[slot] = tail;
+				next[slot] = EMPTY;
+				if ( tail == EMPTY )
+					head = slot;
+				else
+					next[tail] = slot;
+				tail = slot;
+				size++;
+				if ( pointerID != 1 )
+					touches++;
+			}
+			this.inverted[slot] = inverted;
+			this.x[slot] = x;
+			this.y[slot] = y;
+			this.pressure[slot] = pressure;
+			return slot;
+		} finally {
+			LOCK.unlockWrite( stamp );
+		}
+	}
+
+	// remove pointer if it is not new
+	public void removePointer( int deviceType, int pointerID ) {
+		int i = find( key( deviceType, pointerID ) );
+		int slot = slots[i];
+		if ( slot == EMPTY )
+			return;
+		long stamp = LOCK.writeLock();
+		try {
+			// unlink from order of detection and release the slot
+			if ( prev[slot] == EMPTY )
+				head = next[slot];
+			else
+				next[prev[slot]] = next[slot];
+			if ( next[slot] == EMPTY )
+				tail = prev[slot];
+			else
+				prev[next[slot]] = prev[slot];
+			free[nFree++] = slot;
+			size--;
+			if ( pointerID != 1 )
+				touches--;
+
+			// backward-shift deletion keeps probe sequences intact without tombstones
+			int gap = i;
+			int j = ( i + 1 ) & MASK;
+			while ( slots[j] != EMPTY ) {
+				int home = hash( keys[j] ) & MASK;
+				// move entry j into the gap if its home position is not between the gap and j (cyclically)
+				if ( ( ( j - home ) & MASK ) >= ( ( j - gap ) & MASK ) ) {
+					keys[gap] = keys[j];
+					slots[gap] = slots[j];
+					gap = j;
+				}
+				j = ( j + 1 ) & MASK;
+			}
+			slots[gap] = EMPTY;
+		} finally {
+			LOCK.unlockWrite( stamp );
+		}
+	}
+
+	// --- iteration in order of detection (tracking thread only): for (int s = first(); s != -1; s = next(s)) ---
+	public int size() {
+		return size;
+	}
+
+	// contacts that report in every input frame: all but the mouse (pointerID 1)
+	public int touches() {
+		return touches;
+	}
+
+	public int first() {
+		return head;
+	}
+
+	public int next( int slot ) {
+		return next[slot];
+	}
+
+	public int deviceType( int slot ) {
+		return deviceType[slot];
+	}
+
+	public int pointerID( int slot ) {
+		return pointerID[slot];
+	}
+
+	public boolean inverted( int slot ) {
+		return inverted[slot];
+	}
+
+	public int x( int slot ) {
+		return x[slot];
+	}
+
+	public int y( int slot ) {
+		return y[slot];
+	}
+
+	public int pressure( int slot ) {
+		return pressure[slot];
+	}
+
+	public long overflow() {
+		return overflow;
+	}
+
+	// Copies x, y and pointerID of all contacts in order of detection into the given arrays (any thread).
+	// Returns the number of contacts, which may exceed the length of the arrays (only the first contacts are copied then).
+	public int snapshot( int[] X, int[] Y, int[] ID ) {
+		long stamp = LOCK.tryOptimisticRead();
+		int n = copy( X, Y, ID );
+		if ( !LOCK.validate( stamp ) ) {
+			stamp = LOCK.readLock();
+			try {
+				n = copy( X, Y, ID );
+			} finally {
+				LOCK.unlockRead( stamp );
+			}
+		}
+		return n;
+	}
+
+	private int copy( int[] X, int[] Y, int[] ID ) {
+		int n = 0;
+		for ( int slot = head; slot != EMPTY && n < MAX_CONTACTS; slot = next[slot] ) {
+			if ( n < X.length ) {
+				X[n] = x[slot];
+				Y[n] = y[slot];
+				ID[n] = pointerID[slot];
+			}
+			n++;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,58 @@
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+
+class TouchStateItem {
+	public String description;
+	public int count;
+
+	public TouchStateItem( String d ) {
+		description = d;
+		count = 1;
+	}
+}
+
+// Display locomotion parameters of animal (logged by the tracking thread, drawn by the GUI)
+class TouchStateLog {
+	static final int MAX_NUM_ITEMS = 10; //25;
+	ArrayList< TouchStateItem > ITEMS = new ArrayList< TouchStateItem >();
+	private int version = 0; // incremented by every log(), so that the GUI only redraws the log when it changed
+
+	public synchronized int version() {
+		return version;
+	}
+
+	public synchronized void log( String message ) {
+		version++;
+		int N = ITEMS.size();
+		if ( N>0 && message.equals( ITEMS.get(N-1).description ) ) {
+			ITEMS.get(N-1).count ++;
+		}
+		else {
+			ITEMS.add( new TouchStateItem( message ) );
+			while ( ITEMS.size() > MAX_NUM_ITEMS )
+				ITEMS.remove(0);
+		}
+	}
+
+	// width of the widest line drawn by draw()
+	public synchronized int width( FontMetrics METRICS ) {
+		int width = 0;
+		for ( int row = 0; row < ITEMS.size(); ++row ) {
+			String d = ITEMS.get(row).description;
+			int c = ITEMS.get(row).count;
+			width = Math.max( width, METRICS.stringWidth( c > 1 ? d + "(x"+c+")" : d ) );
+		}
+		return width;
+	}
+
+	public synchronized void draw( Graphics2D DRAW, int FONTHEIGHT, int viewportHeight ) {
+		for ( int row = 0; row < ITEMS.size(); ++row ) {
+			String d = ITEMS.get(row).description;
+			int c = ITEMS.get(row).count;
+			if ( c > 1 )
+				d = d + "(x"+c+")";
+			DRAW.drawString( d, 10, viewportHeight-10-(ITEMS.size()-1-row)*FONTHEIGHT /*for debugging*/ - FONTHEIGHT);
+		}
+	}
+}
@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import jwinpointer.JWinPointerReader.PointerEventListener;
+
+// TRACKING ENGINE - computes kinematics on a dedicated thread, once per input frame and independent of Swing repaints.
+// The pointer callbacks of the input source only enqueue events (PointerEventQueue, single producer); the engine thread updates the contact
+// points and collects the events of one frame (FrameAssembler). When the frame is complete it advances the Kinematics once with the COM of
+// all contacts, logs one sample per event in sesFile, publishes an immutable TrackingSample (one per animal with identity tracking) and
+// checks the session end.
+// One engine tracks one session (SessionConfig); when the session duration is reached it stops and runs its session end handler.
+// Times (endTime, sesFile column 12) are session time (SessionClock) of the ingress of the last event of a frame; the session duration
+// counts from the first touch, as before.
+// polytouch.log.format selects the sesFile output: text (default, sesFile_A?P?S?.txt), binary (memory-mapped records with a time index,
+// sesFile_A?P?S?.bin, see SessionColumns) or both. Every logged sample is also published in the shared-memory ring of the session
+// (SampleRingWriter), if enabled.
+class TrackingEngine implements PointerEventListener {
+	private static final int QUEUE_SIZE = Integer.getInteger( "polytouch.input.queue", 4096 );
+	private static final long IDLE_PARK_NS = 1000000; // re-check the queue at least every ms while idle
+	private static final long FULL_PARK_NS = 10000; // lossless: re-check a full queue every 10 us
+	private static final String FORMAT = System.getProperty( "polytouch.log.format", "text" );
+
+	private final int sessionDur;
+	private final double targetZoneRad;
+	private final SessionClock CLOCK;
+
+	private final PointerEventQueue QUEUE = new PointerEventQueue( QUEUE_SIZE );
+	private final PointerEvent EVENT = new PointerEvent(); // only used by the engine thread
+	private final TouchInfoArray TOUCHARRAY = new TouchInfoArray();
+	private final FrameAssembler FRAME = new FrameAssembler();
+	private final int[] FRAME_TRACK = new int[TouchInfoArray.MAX_CONTACTS]; // track of each event of the frame (identity tracking)
+	private final boolean[] PUBLISHED = new boolean[IdentityTracker.MAX_TRACKS + 1]; // track + 1 already published in this frame
+	private final Kinematics KINEMATICS;
+	private final IdentityTracker IDENTITIES;
+	private final int[] IDENTITY_ID = new int[IdentityTracker.MAX_TRACKS];
+	private final double[] IDENTITY_X = new double[IdentityTracker.MAX_TRACKS];
+	private final double[] IDENTITY_Y = new double[IdentityTracker.MAX_TRACKS];
+	private final TouchStateLog LOGGER = new TouchStateLog();
+	private final TrackingState STATE = new TrackingState();
+	private final CopyOnWriteArrayList< TrackingListener > LISTENERS = new CopyOnWriteArrayList< TrackingListener >();
+	private volatile Runnable SESSION_END = null;
+
+	// output files for tracking variables (null if not selected), kept open during the whole session
+	private final SampleEncoder ENCODER = new SampleEncoder(); // reused for every logged sample
+	private final SessionLogWriter SESLOG;
+	private final SessionColumnWriter SESCOLUMNS;
+	private final SampleRingWriter RING; // shared with the feedback, null if disabled
+
+	private Thread THREAD;
+	private volatile boolean running = false;
+	private volatile boolean lossless = false; // producer waits for a full queue instead of dropping the event
+	private volatile boolean busy = false; // an event has been taken from the queue and is being processed, or a frame is incomplete
+	private volatile long processed = 0; // written by the engine thread only
+	private volatile TrackingSample view = null; // latest state for drawing, updated after every event
+
+	// Initialise time tracking variables (session time in ns)
+	private double endTime = 0;
+	private double firstTouch = Double.NaN; // session time of the first touch, start of the session duration
+
+	// kinematics and identity of the animal of the last event (the global COM without identity tracking)
+	private Kinematics K;
+	private int identity = 1;
+
+	TrackingEngine( SessionConfig CONFIG, SessionClock CLOCK, SampleRingWriter RING ) throws IOException {
+		this.CLOCK = CLOCK;
+		this.RING = RING;
+		sessionDur = CONFIG.sessionDur;
+		targetZoneRad = CONFIG.targetZoneRad;
+		KINEMATICS = new Kinematics( CONFIG.targetZoneX, CONFIG.targetZoneY, CONFIG.pixelconv );
+		IDENTITIES = IdentityTracker.RADIUS > 0 ? new IdentityTracker( CONFIG.targetZoneX, CONFIG.targetZoneY, CONFIG.pixelconv ) : null;
+		K = KINEMATICS;
+		if ( !FORMAT.equals( "text" ) && !FORMAT.equals( "binary" ) && !FORMAT.equals( "both" ) )
+			throw new IllegalArgumentException( "Invalid log format: " + FORMAT );
+		SESLOG = FORMAT.equals( "binary" ) ? null : SessionLogWriter.open( CONFIG.file( "sesFile", ".txt" ) );
+		SESCOLUMNS = FORMAT.equals( "text" ) ? null : SessionColumnWriter.open( CONFIG.file( "sesFile", ".bin" ) );
+	}
+
+	// called once on the engine thread when the session duration is reached (the engine has stopped)
+	public void setSessionEndHandler( Runnable handler ) {
+		SESSION_END = handler;
+	}
+
+	// latest sample for the feedback module
+	public TrackingState state() {
+		return STATE;
+	}
+
+	public void addTrackingListener( TrackingListener listener ) {
+		LISTENERS.add( listener );
+	}
+
+	public TouchStateLog getStateLog() {
+		return LOGGER;
+	}
+
+	// latest contacts and kinematics (null before the first event)
+	public TrackingSample view() {
+		return view;
+	}
+
+	// start tracking; the session clock has been started
+	public void start() {
+		if ( SESCOLUMNS != null )
+			SESCOLUMNS.setWallClockOrigin( CLOCK.wallOriginUs() );
+		running = true;
+		THREAD = new Thread( "PolyTouch-tracking" ) {
+			public void run() {
+				while ( running ) {
+					busy = true;
+					if ( QUEUE.poll( EVENT ) ) {
+						process( EVENT );
+						processed++;
+						if ( FRAME.complete( TOUCHARRAY.touches() ) )
+							flush();
+						busy = FRAME.size() > 0;
+					} else if ( FRAME.size() > 0 ) {
+						// contacts of the frame missing: wait for them until the frame window has passed
+						long wait = FRAME.due() - System.nanoTime();
+						if ( wait > 0 ) {
+							QUEUE.await( Math.min( wait, IDLE_PARK_NS ) );
+						} else {
+							flush();
+							busy = false;
+						}
+					} else {
+						busy = false;
+						QUEUE.await( IDLE_PARK_NS );
+					}
+				}
+				flush(); // the last frame when the engine is stopped
+			}
+		};
+		THREAD.setDaemon( true );
+		THREAD.setPriority( Thread.MAX_PRIORITY );
+		THREAD.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	// stop, wait for the engine thread and close sesFile
+	public void close() throws IOException {
+		running = false;
+		try {
+			if ( THREAD != null && THREAD != Thread.currentThread() )
+				THREAD.join();
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		if ( SESLOG != null )
+			SESLOG.close();
+		if ( SESCOLUMNS != null )
+			SESCOLUMNS.close();
+	}
+
+	// true if all events offered so far have been processed
+	public boolean isIdle() {
+		return QUEUE.isEmpty() && !busy;
+	}
+
+	public long processed() {
+		return processed;
+	}
+
+	// events dropped because the queue was full
+	public long dropped() {
+		return QUEUE.dropped();
+	}
+
+	// events waiting in the queue
+	public int queueDepth() {
+		return QUEUE.size();
+	}
+
+	// current contacts and contacts ignored because the contact table was full (read without synchronisation, for monitoring)
+	public int contacts() {
+		return TOUCHARRAY.size();
+	}
+
+	public long contactOverflow() {
+		return TOUCHARRAY.overflow();
+	}
+
+	// wait for the engine instead of dropping events when the queue is full (input that is not live, e.g. a replay as fast as possible)
+	public void setLossless( boolean lossless ) {
+		this.lossless = lossless;
+	}
+
+	// --- producer side, called on the callback thread of the PointerInputSource ---
+	private void awaitSpace() {
+		while ( lossless && running && QUEUE.isFull() )
+			LockSupport.parkNanos( FULL_PARK_NS );
+	}
+
+	public void pointerXYEvent(int deviceType, int pointerID, int eventType, boolean inverted, int x, int y, int pressure) {
+		SessionMetrics.event( eventType );
+		awaitSpace();
+		QUEUE.offer( PointerEvent.KIND_XY, deviceType, pointerID, eventType, inverted, x, y, pressure, 0, System.nanoTime() );
+	}
+
+	public void pointerButtonEvent(int deviceType, int pointerID, int eventType, boolean inverted, int buttonIndex) {
+		SessionMetrics.event( eventType );
+		awaitSpace();
+		QUEUE.offer( PointerEvent.KIND_BUTTON, deviceType, pointerID, eventType, inverted, 0, 0, 0, buttonIndex, System.nanoTime() );
+	}
+
+	public void pointerEvent( int deviceType, int pointerID, int eventType, boolean inverted) {
+		SessionMetrics.event( eventType );
+		awaitSpace();
+		QUEUE.offer( PointerEvent.KIND_POINTER, deviceType, pointerID, eventType, inverted, 0, 0, 0, 0, System.nanoTime() );
+	}
+
+	// --- consumer side, engine thread ---
+	private void process( PointerEvent E ) {
+		if ( E.kind == PointerEvent.KIND_XY ) {
+			// a contact that has already reported in this frame starts the next one
+			if ( !FRAME.accepts( TOUCHARRAY.slot( E.deviceType, E.pointerID ), E.ingressNs ) )
+				flush();
+			int slot = TOUCHARRAY.updatePointer( E.deviceType, E.pointerID, E.inverted, E.x, E.y, E.pressure );
+			FRAME.add( E.pointerID, E.eventType, E.x, E.y, E.pressure, slot, E.ingressNs );
+		} else {
+			flush(); // contacts lost or buttons: the frame before belongs to the contacts as they were
+			LOGGER.log( genereateStateLog( E.pointerID, E.eventType ) );
+			if ( E.kind == PointerEvent.KIND_POINTER )
+				TOUCHARRAY.removePointer( E.deviceType, E.pointerID );
+			TrackingSample VIEW = sample( E.eventType, E.ingressNs );
+			view = VIEW;
+			for ( TrackingListener LISTENER : LISTENERS )
+				LISTENER.stateChanged( VIEW );
+		}
+	}
+
+	// Advance the kinematics once with the events of the frame, log and publish them
+	private void flush() {
+		int n = FRAME.size();
+		if ( n == 0 )
+			return;
+		long ingressNs = FRAME.ingressNs();
+		advance( ingressNs );
+		SessionMetrics.FRAMES.increment();
+		if ( IDENTITIES != null )
+			IDENTITIES.update( TOUCHARRAY, FRAME, FRAME_TRACK, endTime );
+
+		for ( int i = 0; i < n; ++i ) {
+			select( i );
+			int eventType = FRAME.eventType( i );
+			if (K.bodySpeed < 1) {
+				eventType = 0;
+			}
+
+			// Store data in external text file, one line per event of the frame
+			// content: {x, y, xCOM, yCOM, relHead, pressure, pointerID, eventType, elapDistTot, bodySpeed, relDist, endTime, identity}
+			if ( SESLOG != null ) {
+				ENCODER.reset().putInt(FRAME.x(i)).putInt(FRAME.y(i)).putDouble(K.xCOM).putDouble(K.yCOM).putDouble(K.relHead)
+						.putInt(FRAME.pressure(i)).putInt(FRAME.pointerID(i)).putInt(eventType).putDouble(K.elapDistTot).putDouble(K.bodySpeed)
+						.putDouble(K.relDist).putDouble(endTime).putInt(identity).endLine();
+				SESLOG.append(ENCODER.buffer(), 0, ENCODER.length()); // save content at new line of external file (written asynchronously)
+			}
+			if ( SESCOLUMNS != null ) {
+				try {
+					SESCOLUMNS.append(FRAME.x(i), FRAME.y(i), K.xCOM, K.yCOM, K.relHead, FRAME.pressure(i), FRAME.pointerID(i), eventType,
+							K.elapDistTot, K.bodySpeed, K.relDist, endTime, identity); // same record in the memory-mapped binary file
+				} catch ( IOException e ) {
+					e.printStackTrace();
+				}
+			}
+			if ( RING != null )
+				RING.sample(FRAME.x(i), FRAME.y(i), K.xCOM, K.yCOM, K.relHead, FRAME.pressure(i), FRAME.pointerID(i), eventType,
+						K.elapDistTot, K.bodySpeed, K.relDist, endTime, identity); // for local readers that tail the session
+		}
+		LOGGER.log( genereateStateLog( FRAME.pointerID( n - 1 ), FRAME.eventType( n - 1 ) ) );
+
+		// Publish latest kinematic sample for the feedback module and the GUI: once per frame and animal, last event first
+		Arrays.fill( PUBLISHED, false );
+		for ( int i = n - 1; i >= 0; --i ) {
+			int track = IDENTITIES != null ? FRAME_TRACK[i] : -1;
+			if ( PUBLISHED[track + 1] )
+				continue;
+			PUBLISHED[track + 1] = true;
+			select( i );
+			int eventType = K.bodySpeed < 1 ? 0 : FRAME.eventType( i );
+			TrackingSample SAMPLE = sample( eventType, ingressNs );
+			LatencyTrace.INGRESS_TO_COMPUTED.record( SAMPLE.computedNs - SAMPLE.ingressNs );
+			view = SAMPLE;
+			STATE.publish( SAMPLE );
+			for ( TrackingListener LISTENER : LISTENERS )
+				LISTENER.sampleTracked( SAMPLE );
+		}
+		FRAME.clear();
+
+		// Evaluate if session duration has been reached
+		if ((endTime-firstTouch)/1000000000 > sessionDur && running) {
+			System.out.println("Session duration is reached. Motion tracking is terminated...");
+			running = false;
+			Runnable handler = SESSION_END;
+			if ( handler != null )
+				handler.run();
+		}
+	}
+
+	// kinematics and identity of event i of the frame
+	private void select( int i ) {
+		if ( IDENTITIES != null ) {
+			int track = FRAME_TRACK[i];
+			K = track < 0 ? KINEMATICS : IDENTITIES.kinematics( track );
+			identity = track < 0 ? 0 : IDENTITIES.identity( track );
+		}
+	}
+
+	// Advance the kinematics with the COM of all current contact points, once per frame
+	// (the computations previously done in PolyTouchGUI.paintComponent, which advanced them once per contact with partial sums)
+	private void advance( long ingressNs ) {
+		double t = CLOCK.elapsed( ingressNs ); // session time of the frame at ingress (in nanoseconds)
+		// without touches keep previous COM and time
+		if ( !step( TOUCHARRAY, KINEMATICS, t ) ) {
+			return;
+		}
+		endTime = t;
+		if (Double.isNaN(firstTouch)) { // session duration is counted from the first touch
+			firstTouch = endTime;
+		}
+	}
+
+	// one kinematic update with the centre-of-mass (COM) of the contacts at session time t; false if there are no touches
+	// (also measured by PolyTouchBenchmark)
+	static boolean step( TouchInfoArray TOUCHARRAY, Kinematics KINEMATICS, double t ) {
+		double xSUM = 0; double ySUM = 0;
+		double nTouches = 0;
+
+		// sum the contacts of the frame
+		for ( int slot = TOUCHARRAY.first(); slot != -1; slot = TOUCHARRAY.next(slot) ) {
+			// Ignore computer mouse events
+			if (TOUCHARRAY.pointerID(slot) != 1) {
+				xSUM = xSUM+TOUCHARRAY.x(slot);
+				ySUM = ySUM+TOUCHARRAY.y(slot);
+				nTouches = nTouches+1;
+			}
+		}
+		// compute COM - only if touches are detected (nTouches != 0)
+		if (nTouches == 0) {
+			return false;
+		}
+
+		// update time stamp
+		KINEMATICS.timestamp( t );
+		KINEMATICS.step( xSUM/nTouches, ySUM/nTouches );
+		return true;
+	}
+
+	private TrackingSample sample( int eventType, long ingressNs ) {
+		int n = TOUCHARRAY.size();
+		int[] contactX = new int[n]; int[] contactY = new int[n]; int[] contactID = new int[n];
+		TOUCHARRAY.snapshot( contactX, contactY, contactID );
+		int[] identityID = null; double[] identityX = null; double[] identityY = null;
+		if ( IDENTITIES != null ) {
+			int m = IDENTITIES.snapshot( IDENTITY_ID, IDENTITY_X, IDENTITY_Y );
+			identityID = Arrays.copyOf( IDENTITY_ID, m ); identityX = Arrays.copyOf( IDENTITY_X, m ); identityY = Arrays.copyOf( IDENTITY_Y, m );
+		}
+		return new TrackingSample( K.xCOM, K.yCOM, K.relDist, K.xPredicted, K.yPredicted, K.relDistPredicted, K.bodySpeed, K.relHead, K.elapDistTot, eventType, endTime,
+				contactX, contactY, contactID, identity, identityID, identityX, identityY, ingressNs );
+	}
+
+	private static final int EVENT_TYPE_DRAG = 1;
+	private static final int EVENT_TYPE_HOVER = 2;
+	private static final int EVENT_TYPE_DOWN = 3;
+	private static final int EVENT_TYPE_UP = 4;
+	private static final int EVENT_TYPE_BUTTON_DOWN = 5;
+	private static final int EVENT_TYPE_BUTTON_UP = 6;
+	private static final int EVENT_TYPE_IN_RANGE = 7;
+	private static final int EVENT_TYPE_OUT_OF_RANGE = 8;
+	private String genereateStateLog( int pointerID, int eventType) {
+		double bodySpeed = K.bodySpeed;
+		String STRING = "";
+		switch ( eventType ) {
+		case EVENT_TYPE_DRAG :
+			if (bodySpeed > 1) {
+				STRING =  "Moving";
+			} else {
+				STRING = "Immobile";
+			}
+			break;
+		case EVENT_TYPE_HOVER :
+			if (bodySpeed > 1) {
+				STRING = "Moving";
+			} else {
+				STRING = "Immobile";
+			}
+			break;
+		case EVENT_TYPE_DOWN :
+			STRING = "On the ground";
+			break;
+		case EVENT_TYPE_UP :
+			STRING = "Off the ground";
+			break;
+		case EVENT_TYPE_BUTTON_DOWN :
+			STRING = "On the ground";
+			break;
+		case EVENT_TYPE_BUTTON_UP :
+			STRING = "Off the ground";
+			break;
+		case EVENT_TYPE_IN_RANGE :
+			STRING = "Animal detected";
+			break;
+		case EVENT_TYPE_OUT_OF_RANGE :
+			STRING = "Animal not detected";
+			break;
+		default:
+			STRING = "?";
+			break;
+		}
+		STRING = "time: " + Math.round((endTime/1000000000)*100)/100 + " s - walked: " + Math.round(K.elapDistTot*100)/100 + " cm - speed: " + Math.round(bodySpeed*100)/100 + " cm/s - dist to T: " + Math.round((K.relDist-targetZoneRad)*100)/100 + "cm - "+ STRING;
+		return STRING;
+	}
+}
@@ -0,0 +1,9 @@
+// TRACKING LISTENER - receives the results of the TrackingEngine on the tracking thread.
+// Implementations must return quickly, they delay the processing of the next pointer event.
+interface TrackingListener {
+	// a new kinematic sample has been computed for a pointerXYEvent
+	void sampleTracked( TrackingSample sample );
+
+	// contacts or behavioural state changed without a new kinematic sample (button, contact lost, out of range)
+	void stateChanged( TrackingSample view );
+}
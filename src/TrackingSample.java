@@ -0,0 +1,41 @@
+// TRACKING SAMPLE - immutable copy of the kinematic variables computed for one pointer event.
+// All fields are final, so a sample can be handed from the tracking thread to the feedback threads without tearing.
+class TrackingSample {
+	public final double xCOM, yCOM;
+	public final double xPredicted, yPredicted, relDistPredicted; // COM and relDist extrapolated by the lead time (Kinematics), used by the FeedbackRules
+	public final double relDist; // relative distance to centre target zone (cm)
+	public final double bodySpeed; // cm/s
+	public final double relHead; // heading direction (deg)
+	public final double elapDistTot; // total walked distance (cm)
+	public final int eventType; // pointer event type, 0 if the animal is immobile
+	public final double endTime; // elapsed time (ns)
+	public final int[] contactX, contactY, contactID; // contact points at the time of the sample (not to be modified)
+	public final int identity; // animal of the sample (IdentityTracker), 1 without identity tracking (0: mouse or no track)
+	public final int[] identityID; public final double[] identityX, identityY; // all tracked animals, null without identity tracking
+	public final long ingressNs; // System.nanoTime() at which the pointer event was received
+	public final long computedNs; // System.nanoTime() at which the sample was computed
+
+	public TrackingSample( double xCOM, double yCOM, double relDist, double xPredicted, double yPredicted, double relDistPredicted,
+			double bodySpeed, double relHead, double elapDistTot, int eventType, double endTime, int[] contactX, int[] contactY, int[] contactID, int identity, int[] identityID, double[] identityX, double[] identityY, long ingressNs ) {
+		this.xCOM = xCOM;
+		this.yCOM = yCOM;
+		this.relDist = relDist;
+		this.xPredicted = xPredicted;
+		this.yPredicted = yPredicted;
+		this.relDistPredicted = relDistPredicted;
+		this.bodySpeed = bodySpeed;
+		this.relHead = relHead;
+		this.elapDistTot = elapDistTot;
+		this.eventType = eventType;
+		this.endTime = endTime;
+		this.contactX = contactX;
+		this.contactY = contactY;
+		this.contactID = contactID;
+		this.identity = identity;
+		this.identityID = identityID;
+		this.identityX = identityX;
+		this.identityY = identityY;
+		this.ingressNs = ingressNs;
+		this.computedNs = System.nanoTime();
+	}
+}
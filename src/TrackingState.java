@@ -0,0 +1,16 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+// TRACKING STATE - latest-value channel between the tracking module (TrackingEngine) and the feedback module (TriggerSound), one per session.
+// The tracking side publishes every new sample, the feedback side reads the most recent one in O(1) without touching sesFile.
+class TrackingState {
+	private final AtomicReference< TrackingSample > LATEST = new AtomicReference< TrackingSample >();
+
+	void publish( TrackingSample sample ) {
+		LATEST.set( sample );
+	}
+
+	// returns null if no sample has been tracked yet
+	TrackingSample latest() {
+		return LATEST.get();
+	}
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// TRAIL BUFFER - bounded single-producer/single-consumer queue of COM points from the TrackingEngine (tracking thread) to the
+// PolyTouchGUI (event dispatch thread), which draws them into its trail layer once per frame. Points are stored in preallocated
+// primitive arrays; if the GUI falls behind by a full buffer, the point is dropped and counted (the tracking thread never waits).
+class TrailBuffer {
+	private final int MASK;
+	private final int[] identity;
+	private final float[] x, y;
+
+	private final AtomicLong HEAD = new AtomicLong(); // next slot to be read (written by consumer only)
+	private final AtomicLong TAIL = new AtomicLong(); // next slot to be written (written by producer only)
+	private volatile long dropped = 0; // written by producer only
+
+	// capacity is rounded up to a power of two
+	TrailBuffer( int capacity ) {
+		int size = Integer.highestOneBit( Math.max( 2, capacity - 1 ) ) << 1;
+		MASK = size - 1;
+		identity = new int[size];
+		x = new float[size];
+		y = new float[size];
+	}
+
+	public int capacity() {
+		return MASK + 1;
+	}
+
+	// producer side; returns false if the buffer is full and the point was dropped
+	public boolean offer( int identity, float x, float y ) {
+		long t = TAIL.get();
+		if ( t - HEAD.get() > MASK ) {
+			dropped++;
+			return false;
+		}
+		int i = (int) (t & MASK);
+		this.identity[i] = identity;
+		this.x[i] = x;
+		this.y[i] = y;
+		TAIL.lazySet( t + 1 ); // publishes the slot contents
+		return true;
+	}
+
+	// consumer side; moves up to ID.length of the oldest points into ID, X and Y, returns the number of points
+	public int drain( int[] ID, float[] X, float[] Y ) {
+		long h = HEAD.get();
+		int n = (int) Math.min( TAIL.get() - h, ID.length );
+		for ( int k = 0; k < n; ++k ) {
+			int i = (int) ( ( h + k ) & MASK );
+			ID[k] = identity[i];
+			X[k] = x[i];
+			Y[k] = y[i];
+		}
+		HEAD.lazySet( h + n ); // releases the slots to the producer
+		return n;
+	}
+
+	public long dropped() {
+		return dropped;
+	}
+}
@@ -0,0 +1,141 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** TRIGGER AUDIO FEEDBACK
+ *  tone volume is regulated with gain control (applied by the AudioEngine)
+ *  one instance per Session: audio engine and sesAudioFile belong to the session, trigger time stamps are session time (SessionClock)
+ *  
+ *  init(), close() and the PCM output of AudioEngine adapted from: StdAudio.java https://introcs.cs.princeton.edu/java/stdlib/StdAudio.java.html 
+ *  
+ *  */
+class TriggerSound {
+	private static final double toneFreq5 = 760; // high frequency(Hz)
+	private static final double toneFreq4 = 600;
+	private static final double toneFreq3 = 450;
+	private static final double toneFreq2 = 300;
+	private static final double toneFreq1 = 150; // low frequency (Hz)	
+
+	private final SessionConfig CONFIG;
+	private final TrackingState STATE; // latest sample of the session, for the trigger time stamps of stimuli
+
+	private float GAIN = 0f; 	// set at 0f initially to ignore first beep
+
+	// audio engine: owns the audio output for the whole session and renders the tone; the methods below only publish targets
+	// polytouch.audio selects the output: line (default, audio out jack), file (WAV polytouch.audio.file), null (default headless)
+	private AudioEngine AUDIO = null;
+	private StimulusScheduler SCHEDULER = null;
+
+	// latency tracing (LatencyTrace): last sample seen by the feedback module
+	private TrackingSample TRACED = null;
+
+	// output file for feedback trigger time stamps, kept open during the whole session
+	private final SessionLogWriter AUDIOLOG;
+
+	private final SampleEncoder ENCODER = new SampleEncoder(); // reused for every logged trigger, guarded by logFeedback()
+
+	// clock of the session, so that feedback trigger time stamps can be joined with the tracking samples
+	private final SessionClock CLOCK;
+
+	// shared-memory ring of the session (null if disabled): feedback triggers and stimulus onsets next to the samples
+	private final SampleRingWriter RING;
+
+	TriggerSound(SessionConfig CONFIG, TrackingState STATE, SessionClock CLOCK, SampleRingWriter RING) throws IOException {
+		this.CONFIG = CONFIG;
+		this.STATE = STATE;
+		this.CLOCK = CLOCK;
+		this.RING = RING;
+		AUDIOLOG = SessionLogWriter.open(CONFIG.file("sesAudioFile", ".txt"));
+	}
+
+	// stamp a tracked sample the first time it is seen by the feedback module
+	private synchronized void traceSeen(TrackingSample LAST) {
+		if (LAST != TRACED) {
+			TRACED = LAST;
+			LatencyTrace.COMPUTED_TO_FEEDBACK.record(System.nanoTime() - LAST.computedNs);
+		}
+	}
+
+	// save content {relDistLast, endTimeNs2} at new line of external file (written asynchronously)
+	private synchronized void logFeedback(double relDistLast, long endTimeNs2) {
+		ENCODER.reset().putDouble(relDistLast).putLong(endTimeNs2).endLine();
+		AUDIOLOG.append(ENCODER.buffer(), 0, ENCODER.length());
+	}
+
+	private AudioSink createAudioSink() {
+		String audio = System.getProperty("polytouch.audio", PolyTouch.HEADLESS ? "null" : "line");
+		if (audio.equals("line")) {
+			return new LineAudioSink();
+		} else if (audio.equals("file")) {
+			String audioFile = System.getProperty("polytouch.audio.file");
+			return new FileAudioSink(audioFile != null ? new File(audioFile) : CONFIG.file("sesAudio", ".wav"));
+		} else if (audio.equals("null")) {
+			return new NullAudioSink();
+		}
+		throw new IllegalArgumentException("Unknown audio output: " + audio);
+	}
+
+	// start the audio engine once per session (later calls return immediately)
+	synchronized void init() throws Exception {
+		if (AUDIO != null) {
+			return;
+		}
+		AudioEngine ENGINE = new AudioEngine(createAudioSink(), CONFIG.toneFs, CONFIG.toneAmp);
+		for (double freq : new double[] {toneFreq1, toneFreq2, toneFreq3, toneFreq4, toneFreq5, CONFIG.toneFreq})
+			ENGINE.cache(freq);
+		ENGINE.start(); // no sound gets made before the first target (clean sound)
+		LatencyTrace.AUDIO = ENGINE;
+		AUDIO = ENGINE;
+	}
+
+	// Close standard audio and the files of the feedback.
+	synchronized void close() {
+		if (AUDIO != null) {
+			AUDIO.stop(); // plays what is buffered and releases the line (prevent audio stream leaking), completes a WAV file
+		}
+		if (SCHEDULER != null) {
+			SCHEDULER.close();
+		}
+		AUDIOLOG.close();
+	}
+
+	// Apply a feedback target selected by the FeedbackRules (gain < 0: silence) and save its trigger time stamp
+	void feedback(float gain, double freq, TrackingSample CAUSE) {
+		traceSeen(CAUSE);
+		SessionMetrics.FEEDBACK_TRIGGERS.increment();
+		if (gain >= 0) {
+			GAIN = gain;
+			AUDIO.set(GAIN, freq, CAUSE); // gain change is ramped in on the playing tone
+		} else {
+			AUDIO.silence();
+		}
+
+		// Save feedback trigger time stamp in external file
+		long endTimeNs2 = CLOCK.now(); // session time in nanoseconds at which the target has been handed to the audio engine
+		logFeedback(CAUSE.relDist, endTimeNs2);
+		if (RING != null) {
+			RING.feedback(gain >= 0 ? gain : -1, freq, CAUSE.relDist, endTimeNs2);
+		}
+	}
+
+	/** --- PROTOCOL 1 - SESSION 5: pseudo-random presentation of 10s 39,49,59 dB (3x each), in the order of intRand
+	 *  (sessions 2-4 of protocol 1 and protocol 2 are rule sets, see FeedbackRules)
+	 */
+	synchronized void playStimuli(ArrayList<Integer> intRand) throws Exception {
+		init();
+		SCHEDULER = new StimulusScheduler(intRand, CONFIG.sessionDur, CONFIG.toneFreq, CONFIG.toneDur, CONFIG.tonePeriod, CONFIG.toneFs,
+				new Random(), CLOCK.originNs(), CONFIG.file("sesStimFile", ".txt"), this);
+		SCHEDULER.start(AUDIO);
+	}
+
+	// Save the trigger time stamp of a stimulus (actual onset at the audio out jack) in external file
+	void stimulusOnset(int stimulus, int intRand, float gain, long scheduledNs, long actualNs) {
+		TrackingSample LAST = STATE.latest();
+		long endTimeNs2 = CLOCK.elapsed(actualNs); // session time of the onset in nanoseconds
+		logFeedback(LAST != null ? LAST.relDist : 0, endTimeNs2);
+		if (RING != null) {
+			RING.stimulus(stimulus, intRand, gain, CLOCK.elapsed(scheduledNs), endTimeNs2);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+// WAVETABLE OSCILLATOR - streams a sine tone as 16-bit signed little Endian mono PCM, in chunks, straight into a byte buffer.
+// Replaces createSineWave(), which materialised toneFs*toneDur doubles per tone (about 200 MB for a 1800 s session) and
+// computed Math.sin for every sample:
+// - one period of the sampled tone is cached per frequency (PCM values, amplitude applied): with integer frequency f and sample
+//   rate fs the sampled sine repeats after L = fs/gcd(fs,f) samples (k = f/gcd(fs,f) cycles), e.g. 32 samples for 450 Hz and
+//   360 samples for 760 Hz at 14400 Hz, so the output matches createSineWave() (up to rounding) for any duration
+// - memory is constant: at most fs samples per cached frequency, whatever the tone duration
+// - a frequency change keeps the phase: the new table is entered at the sample closest to the current phase of the old one
+// Non-integer frequencies are rounded to the nearest Hz. Not thread-safe; the owner of the audio line renders.
+class WavetableOscillator {
+	private static final double MAX_16_BIT = 32767; // Short.MAX_VALUE
+
+	private final int sampleRate;
+	private final double amplitude;
+
+	// cached periods: frequency -> PCM table, number of cycles in the table and its inverse modulo the table length
+	private double[] FREQS = new double[8];
+	private short[][] TABLES = new short[8][];
+	private int[] CYCLES = new int[8];
+	private int[] INVERSES = new int[8];
+	private int nCached = 0;
+
+	// current period and read position
+	private double frequency = Double.NaN;
+	private short[] TABLE;
+	private int cycles;
+	private int index = 0;
+
+	WavetableOscillator( double sampleRate, double amplitude ) {
+		this.sampleRate = (int) Math.round( sampleRate );
+		this.amplitude = amplitude;
+		setFrequency( 0 );
+	}
+
+	public double frequency() {
+		return frequency;
+	}
+
+	// phase of the next sample, in cycles [0, 1)
+	public double phase() {
+		return (double) ( (long) index * cycles % TABLE.length ) / TABLE.length;
+	}
+
+	// precompute the period of a frequency (e.g. all frequencies of a protocol before the session starts)
+	public void cache( double freq ) {
+		lookup( freq );
+	}
+
+	// continue the tone at another frequency without a phase jump
+	public void setFrequency( double freq ) {
+		if ( freq == frequency )
+			return;
+		int i = lookup( freq );
+		short[] NEXT = TABLES[i];
+		int L = NEXT.length;
+		int target = TABLE == null ? 0 : (int) ( Math.round( phase() * L ) % L ); // closest phase target/L of the new table
+		index = (int) ( (long) target * INVERSES[i] % L );
+		TABLE = NEXT;
+		cycles = CYCLES[i];
+		frequency = freq;
+	}
+
+	// render nFrames samples into OUT at offset, returns the number of bytes written (2 per sample)
+	public int render( byte[] OUT, int offset, int nFrames ) {
+		short[] T = TABLE;
+		int L = T.length;
+		int p = index;
+		int o = offset;
+		for ( int i = 0; i < nFrames; ++i ) {
+			short s = T[p];
+			OUT[o++] = (byte) s;
+			OUT[o++] = (byte) ( s >> 8 ); // little Endian
+			if ( ++p == L )
+				p = 0;
+		}
+		index = p;
+		return o - offset;
+	}
+
+	// render nFrames samples scaled by a linear gain that changes by gainStep per sample (ramp), returns the number of bytes written
+	public int render( byte[] OUT, int offset, int nFrames, double gain, double gainStep ) {
+		short[] T = TABLE;
+		int L = T.length;
+		int p = index;
+		int o = offset;
+		for ( int i = 0; i < nFrames; ++i ) {
+			short s = (short) ( T[p] * gain );
+			OUT[o++] = (byte) s;
+			OUT[o++] = (byte) ( s >> 8 ); // little Endian
+			if ( ++p == L )
+				p = 0;
+			gain += gainStep;
+		}
+		index = p;
+		return o - offset;
+	}
+
+	private int lookup( double freq ) {
+		if ( !( freq >= 0 ) )
+			throw new IllegalArgumentException( "Invalid tone frequency: " + freq );
+		for ( int i = 0; i < nCached; ++i ) {
+			if ( FREQS[i] == freq )
+				return i;
+		}
+		if ( nCached == FREQS.length ) {
+			FREQS = Arrays.copyOf( FREQS, nCached * 2 );
+			TABLES = Arrays.copyOf( TABLES, nCached * 2 );
+			CYCLES = Arrays.copyOf( CYCLES, nCached * 2 );
+			INVERSES = Arrays.copyOf( INVERSES, nCached * 2 );
+		}
+		int f = (int) ( Math.round( freq ) % sampleRate );
+		int g = gcd( sampleRate, f );
+		int L = sampleRate / g;
+		int k = f / g;
+		short[] T = new short[L];
+		for ( int i = 0; i < L; ++i ) {
+			double in = amplitude * Math.sin( 2 * Math.PI * i * k / L );
+			// clip if outside [-1, +1]
+			if ( in < -1.0 ) in = -1.0;
+			if ( in > +1.0 ) in = +1.0;
+			T[i] = (short) ( MAX_16_BIT * in );
+		}
+		FREQS[nCached] = freq;
+		TABLES[nCached] = T;
+		CYCLES[nCached] = k;
+		INVERSES[nCached] = inverse( k, L );
+		return nCached++;
+	}
+
+	private static int gcd( int a, int b ) {
+		while ( b != 0 ) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	// k^-1 modulo L (k and L are coprime), so that table position (target * k^-1) holds phase target/L
+	private static int inverse( int k, int L ) {
+		long r0 = L, r1 = k % L, t0 = 0, t1 = 1;
+		while ( r1 != 0 ) {
+			long q = r0 / r1;
+			long r = r0 - q * r1; r0 = r1; r1 = r;
+			long t = t0 - q * t1; t0 = t1; t1 = t;
+		}
+		return (int) ( ( t0 % L + L ) % L );
+	}
+}
@@ -0,0 +1,196 @@
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/** ZONE - named area of the arena (circle, rectangle, polygon or annulus), in pixels of the tracking arena (GUI).
+ *
+ *  Zones are read from a zone file, one zone per line (% starts a comment):
+ *    <name> circle <x> <y> <r>
+ *    <name> rect <x0> <y0> <x1> <y1>
+ *    <name> polygon <x1> <y1> <x2> <y2> <x3> <y3> ...
+ *    <name> annulus <x> <y> <rInner> <rOuter>
+ *  The zone file is polytouch.zones or C:\Users\Public/sesZones.txt next to sesFileStart.txt; without zone file the session
+ *  has one circular zone "target" (targetZoneX, targetZoneY, targetZoneRad converted from cm to pixels).
+ */
+class Zone {
+	static final int CIRCLE = 0;
+	static final int RECT = 1;
+	static final int POLYGON = 2;
+	static final int ANNULUS = 3;
+	private static final String[] SHAPES = { "circle", "rect", "polygon", "annulus" };
+
+	// result of classify()
+	static final int OUTSIDE = 0;
+	static final int INSIDE = 1;
+	static final int BOUNDARY = 2;
+
+	final String name;
+	final int shape;
+	private final double[] P; // circle: x y r - rect: x0 y0 x1 y1 - polygon: x1 y1 x2 y2 ... - annulus: x y rInner rOuter
+	final double minX, minY, maxX, maxY; // bounding box
+
+	Zone( String name, int shape, double[] P ) {
+		this.name = name;
+		this.shape = shape;
+		this.P = P.clone();
+		switch ( shape ) {
+		case CIRCLE:
+		case ANNULUS:
+			double r = P[shape == CIRCLE ? 2 : 3];
+			minX = P[0] - r; minY = P[1] - r; maxX = P[0] + r; maxY = P[1] + r;
+			break;
+		case RECT:
+			minX = Math.min( P[0], P[2] ); minY = Math.min( P[1], P[3] ); maxX = Math.max( P[0], P[2] ); maxY = Math.max( P[1], P[3] );
+			break;
+		default:
+			double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+			for ( int i = 0; i < P.length; i += 2 ) {
+				x0 = Math.min( x0, P[i] ); y0 = Math.min( y0, P[i + 1] );
+				x1 = Math.max( x1, P[i] ); y1 = Math.max( y1, P[i + 1] );
+			}
+			minX = x0; minY = y0; maxX = x1; maxY = y1;
+		}
+	}
+
+	// exact membership test of point x,y
+	boolean contains( double x, double y ) {
+		switch ( shape ) {
+		case CIRCLE:
+			return distSq( x, y ) < P[2] * P[2];
+		case ANNULUS:
+			double d = distSq( x, y );
+			return d >= P[2] * P[2] && d < P[3] * P[3];
+		case RECT:
+			return x >= minX && x < maxX && y >= minY && y < maxY;
+		default:
+			// even-odd rule
+			boolean inside = false;
+			for ( int i = 0, j = P.length - 2; i < P.length; j = i, i += 2 ) {
+				if ( ( P[i + 1] > y ) != ( P[j + 1] > y ) && x < ( P[j] - P[i] ) * ( y - P[i + 1] ) / ( P[j + 1] - P[i + 1] ) + P[i] )
+					inside = !inside;
+			}
+			return inside;
+		}
+	}
+
+	// is the cell x0..x1, y0..y1 entirely inside, entirely outside or on the boundary of the zone (used to build the ZoneIndex)
+	int classify( double x0, double y0, double x1, double y1 ) {
+		if ( x1 <= minX || x0 >= maxX || y1 <= minY || y0 >= maxY )
+			return OUTSIDE;
+		switch ( shape ) {
+		case CIRCLE:
+		case ANNULUS:
+			double near = nearestSq( x0, y0, x1, y1 );
+			double far = farthestSq( x0, y0, x1, y1 );
+			double rIn = shape == CIRCLE ? 0 : P[2];
+			double rOut = shape == CIRCLE ? P[2] : P[3];
+			if ( near >= rIn * rIn && far < rOut * rOut )
+				return INSIDE;
+			if ( near >= rOut * rOut || far < rIn * rIn )
+				return OUTSIDE;
+			return BOUNDARY;
+		case RECT:
+			return x0 >= minX && x1 <= maxX && y0 >= minY && y1 <= maxY ? INSIDE : BOUNDARY;
+		default:
+			// no edge crosses the cell: the cell is entirely inside or outside
+			for ( int i = 0, j = P.length - 2; i < P.length; j = i, i += 2 ) {
+				if ( Line2D.linesIntersect( P[j], P[j + 1], P[i], P[i + 1], x0, y0, x1, y0 )
+						|| Line2D.linesIntersect( P[j], P[j + 1], P[i], P[i + 1], x1, y0, x1, y1 )
+						|| Line2D.linesIntersect( P[j], P[j + 1], P[i], P[i + 1], x1, y1, x0, y1 )
+						|| Line2D.linesIntersect( P[j], P[j + 1], P[i], P[i + 1], x0, y1, x0, y0 )
+						|| ( P[i] >= x0 && P[i] <= x1 && P[i + 1] >= y0 && P[i + 1] <= y1 ) )
+					return BOUNDARY;
+			}
+			return contains( ( x0 + x1 ) / 2, ( y0 + y1 ) / 2 ) ? INSIDE : OUTSIDE;
+		}
+	}
+
+	// outline for drawing
+	Shape shape() {
+		switch ( shape ) {
+		case CIRCLE:
+			return new Ellipse2D.Double( minX, minY, 2 * P[2], 2 * P[2] );
+		case ANNULUS:
+			Area AREA = new Area( new Ellipse2D.Double( minX, minY, 2 * P[3], 2 * P[3] ) );
+			AREA.subtract( new Area( new Ellipse2D.Double( P[0] - P[2], P[1] - P[2], 2 * P[2], 2 * P[2] ) ) );
+			return AREA;
+		case RECT:
+			return new Rectangle2D.Double( minX, minY, maxX - minX, maxY - minY );
+		default:
+			Path2D.Double PATH = new Path2D.Double();
+			PATH.moveTo( P[0], P[1] );
+			for ( int i = 2; i < P.length; i += 2 )
+				PATH.lineTo( P[i], P[i + 1] );
+			PATH.closePath();
+			return PATH;
+		}
+	}
+
+	private double distSq( double x, double y ) {
+		return ( x - P[0] ) * ( x - P[0] ) + ( y - P[1] ) * ( y - P[1] );
+	}
+
+	private double nearestSq( double x0, double y0, double x1, double y1 ) {
+		double dx = Math.max( 0, Math.max( x0 - P[0], P[0] - x1 ) );
+		double dy = Math.max( 0, Math.max( y0 - P[1], P[1] - y1 ) );
+		return dx * dx + dy * dy;
+	}
+
+	private double farthestSq( double x0, double y0, double x1, double y1 ) {
+		double dx = Math.max( Math.abs( x0 - P[0] ), Math.abs( x1 - P[0] ) );
+		double dy = Math.max( Math.abs( y0 - P[1] ), Math.abs( y1 - P[1] ) );
+		return dx * dx + dy * dy;
+	}
+
+	// parse one line of a zone file
+	static Zone parse( String line ) {
+		String[] T = line.trim().split( "\\s+" );
+		int shape = -1;
+		for ( int i = 0; T.length > 1 && i < SHAPES.length; ++i ) {
+			if ( SHAPES[i].equals( T[1] ) )
+				shape = i;
+		}
+		int n = T.length - 2;
+		if ( shape < 0 || ( shape == POLYGON ? n < 6 || n % 2 != 0 : n != ( shape == CIRCLE ? 3 : 4 ) ) )
+			throw new IllegalArgumentException( "Invalid zone: " + line );
+		double[] P = new double[n];
+		for ( int i = 0; i < n; ++i )
+			P[i] = Double.parseDouble( T[i + 2] );
+		return new Zone( T[0], shape, P );
+	}
+
+	static Zone[] readZones( File file ) throws IOException {
+		ArrayList< Zone > ZONES = new ArrayList< Zone >();
+		BufferedReader in = new BufferedReader( new FileReader( file ) );
+		try {
+			String line;
+			while ( ( line = in.readLine() ) != null ) {
+				int comment = line.indexOf( '%' );
+				if ( comment >= 0 )
+					line = line.substring( 0, comment );
+				if ( line.trim().length() > 0 )
+					ZONES.add( parse( line ) );
+			}
+		} finally {
+			in.close();
+		}
+		return ZONES.toArray( new Zone[ZONES.size()] );
+	}
+
+	// zones of the session (zone file or the target zone of the session)
+	static Zone[] forSession( SessionConfig CONFIG ) throws IOException {
+		String zoneFile = System.getProperty( "polytouch.zones" );
+		File file = new File( zoneFile != null ? zoneFile : SessionConfig.DIRECTORY + "sesZones.txt" );
+		if ( zoneFile != null || file.exists() )
+			return readZones( file );
+		return new Zone[] { new Zone( "target", CIRCLE, new double[] { CONFIG.targetZoneX, CONFIG.targetZoneY, CONFIG.targetZoneRad / CONFIG.pixelconv } ) };
+	}
+}
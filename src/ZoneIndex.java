@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+// ZONE INDEX - uniform grid over the bounding box of all zones, precomputed once per session.
+// Every cell lists the zones that cover it entirely (no test needed) and the zones whose boundary crosses it (exact test),
+// so the zone membership of a COM sample costs one cell lookup plus the few boundary tests of that cell, however many zones
+// are defined. Cell size: polytouch.zones.cell (pixels, 16).
+class ZoneIndex {
+	static final int CELL_SIZE = Integer.getInteger( "polytouch.zones.cell", 16 );
+
+	private final Zone[] ZONES;
+	private final double originX, originY;
+	private final int nX, nY;
+
+	// per cell c: INSIDE[INSIDE_START[c] .. INSIDE_START[c+1]-1] and BOUNDARY[BOUNDARY_START[c] .. BOUNDARY_START[c+1]-1]
+	private final int[] INSIDE_START, INSIDE, BOUNDARY_START, BOUNDARY;
+
+	ZoneIndex( Zone[] ZONES ) {
+		this.ZONES = ZONES.clone();
+		double x0 = 0, y0 = 0, x1 = 0, y1 = 0;
+		for ( int z = 0; z < ZONES.length; ++z ) {
+			x0 = z == 0 ? ZONES[z].minX : Math.min( x0, ZONES[z].minX );
+			y0 = z == 0 ? ZONES[z].minY : Math.min( y0, ZONES[z].minY );
+			x1 = z == 0 ? ZONES[z].maxX : Math.max( x1, ZONES[z].maxX );
+			y1 = z == 0 ? ZONES[z].maxY : Math.max( y1, ZONES[z].maxY );
+		}
+		originX = Math.floor( x0 );
+		originY = Math.floor( y0 );
+		nX = Math.max( 1, (int) Math.ceil( ( x1 - originX ) / CELL_SIZE ) );
+		nY = Math.max( 1, (int) Math.ceil( ( y1 - originY ) / CELL_SIZE ) );
+
+		int nCells = nX * nY;
+		INSIDE_START = new int[nCells + 1];
+		BOUNDARY_START = new int[nCells + 1];
+		int[] inside = new int[16];
+		int[] boundary = new int[16];
+		int nInside = 0, nBoundary = 0;
+		for ( int c = 0; c < nCells; ++c ) {
+			INSIDE_START[c] = nInside;
+			BOUNDARY_START[c] = nBoundary;
+			double cx = originX + ( c % nX ) * CELL_SIZE;
+			double cy = originY + ( c / nX ) * CELL_SIZE;
+			for ( int z = 0; z < ZONES.length; ++z ) {
+				int type = ZONES[z].classify( cx, cy, cx + CELL_SIZE, cy + CELL_SIZE );
+				if ( type == Zone.INSIDE ) {
+					if ( nInside == inside.length )
+						inside = Arrays.copyOf( inside, 2 * nInside );
+					inside[nInside++] = z;
+				} else if ( type == Zone.BOUNDARY ) {
+					if ( nBoundary == boundary.length )
+						boundary = Arrays.copyOf( boundary, 2 * nBoundary );
+					boundary[nBoundary++] = z;
+				}
+			}
+		}
+		INSIDE_START[nCells] = nInside;
+		BOUNDARY_START[nCells] = nBoundary;
+		INSIDE = Arrays.copyOf( inside, nInside );
+		BOUNDARY = Arrays.copyOf( boundary, nBoundary );
+	}
+
+	public int size() {
+		return ZONES.length;
+	}
+
+	public Zone zone( int z ) {
+		return ZONES[z];
+	}
+
+	// index of the zone with this name, -1 if there is none
+	public int indexOf( String name ) {
+		for ( int z = 0; z < ZONES.length; ++z ) {
+			if ( ZONES[z].name.equals( name ) )
+				return z;
+		}
+		return -1;
+	}
+
+	// bit set with one word per 64 zones, for query()
+	public long[] newMembership() {
+		return new long[( ZONES.length + 63 ) >> 6];
+	}
+
+	// sets bit z of MEMBERSHIP for every zone z containing x,y; returns the number of zones (no allocation)
+	public int query( double x, double y, long[] MEMBERSHIP ) {
+		Arrays.fill( MEMBERSHIP, 0 );
+		if ( !( x >= originX && y >= originY ) ) // also NaN (no COM yet)
+			return 0;
+		int ix = (int) ( ( x - originX ) / CELL_SIZE );
+		int iy = (int) ( ( y - originY ) / CELL_SIZE );
+		if ( ix >= nX || iy >= nY )
+			return 0;
+		int c = iy * nX + ix;
+		int n = INSIDE_START[c + 1] - INSIDE_START[c];
+		for ( int i = INSIDE_START[c]; i < INSIDE_START[c + 1]; ++i )
+			MEMBERSHIP[INSIDE[i] >> 6] |= 1L << INSIDE[i];
+		for ( int i = BOUNDARY_START[c]; i < BOUNDARY_START[c + 1]; ++i ) {
+			int z = BOUNDARY[i];
+			if ( ZONES[z].contains( x, y ) ) {
+				MEMBERSHIP[z >> 6] |= 1L << z;
+				n++;
+			}
+		}
+		return n;
+	}
+
+	static boolean member( long[] MEMBERSHIP, int z ) {
+		return ( MEMBERSHIP[z >> 6] & ( 1L << z ) ) != 0;
+	}
+}
@@ -0,0 +1,67 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+// ZONE TRACKER - zone entry and exit events of the COM, on the tracking thread (TrackingListener).
+// On every tracked sample the zone membership of the COM is looked up in the ZoneIndex and compared with the previous sample;
+// every change is saved in sesZoneFile with content {zone, event (1 = entry, 0 = exit), time, dwell time, identity} (times in ns, on the
+// clock of sesFile column 12; dwell time of an exit is the time since the entry, 0 for an entry) and zones are numbered from 1
+// in the order of the zone file. The membership is followed per animal (TrackingSample.identity, see IdentityTracker).
+class ZoneTracker implements TrackingListener {
+	private final ZoneIndex INDEX;
+	private final SessionLogWriter ZONELOG;
+	private final SampleEncoder ENCODER = new SampleEncoder();
+	private long[] MEMBERSHIP;
+	private long[][] PREVIOUS; // per identity
+	private double[][] ENTRY; // entry time per identity and zone
+
+	ZoneTracker( ZoneIndex INDEX, File zoneFile ) throws IOException {
+		this.INDEX = INDEX;
+		this.MEMBERSHIP = INDEX.newMembership();
+		this.PREVIOUS = new long[0][];
+		this.ENTRY = new double[0][];
+		this.ZONELOG = SessionLogWriter.open( zoneFile );
+	}
+
+	public void sampleTracked( TrackingSample SAMPLE ) {
+		int id = SAMPLE.identity;
+		if ( id >= PREVIOUS.length ) {
+			int n = PREVIOUS.length;
+			PREVIOUS = Arrays.copyOf( PREVIOUS, Math.max( id + 1, 2 * n ) );
+			ENTRY = Arrays.copyOf( ENTRY, PREVIOUS.length );
+			for ( int i = n; i < PREVIOUS.length; ++i ) {
+				PREVIOUS[i] = INDEX.newMembership();
+				ENTRY[i] = new double[INDEX.size()];
+			}
+		}
+		INDEX.query( SAMPLE.xCOM, SAMPLE.yCOM, MEMBERSHIP );
+		for ( int w = 0; w < MEMBERSHIP.length; ++w ) {
+			long changed = MEMBERSHIP[w] ^ PREVIOUS[id][w];
+			while ( changed != 0 ) {
+				int z = ( w << 6 ) + Long.numberOfTrailingZeros( changed );
+				changed &= changed - 1;
+				if ( ZoneIndex.member( MEMBERSHIP, z ) ) {
+					ENTRY[id][z] = SAMPLE.endTime;
+					log( z, 1, SAMPLE.endTime, 0, id );
+				} else {
+					log( z, 0, SAMPLE.endTime, SAMPLE.endTime - ENTRY[id][z], id );
+				}
+			}
+		}
+		long[] SWAP = PREVIOUS[id];
+		PREVIOUS[id] = MEMBERSHIP;
+		MEMBERSHIP = SWAP;
+	}
+
+	public void stateChanged( TrackingSample view ) {
+	}
+
+	void close() throws IOException {
+		ZONELOG.close();
+	}
+
+	private void log( int zone, int event, double time, double dwell, int identity ) {
+		ENCODER.reset().putInt( zone + 1 ).putInt( event ).putDouble( time ).putDouble( dwell ).putInt( identity ).endLine();
+		ZONELOG.append( ENCODER.buffer(), 0, ENCODER.length() );
+	}
+}